@@ -69,6 +69,13 @@ export async function activate(context: ExtensionContext) {
     commands.registerCommand('java.command.test.debug', debugTest);
     commands.registerCommand('java.command.findReferences', runFindReferences);
 
+    // Register commands to record what the server is doing, when it stalls
+    commands.registerCommand('java.command.startRecording', () => client.sendRequest('java/startRecording'));
+    commands.registerCommand('java.command.stopRecording', async () => {
+        const file = await client.sendRequest<string>('java/stopRecording');
+        window.showInformationMessage('Saved flight recording to ' + file);
+    });
+
 	// When the language client activates, register a progress-listener
     client.onReady().then(() => createProgressListeners(client));
 
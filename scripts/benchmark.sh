@@ -1,5 +1,6 @@
-
 #!/usr/bin/env bash
+# Run a JMH benchmark, for example `./scripts/benchmark.sh BenchmarkWorkspace -p files=1000`.
+# With no arguments, runs BenchmarkPruner.
 
 # Compile the benchmark
 mvn test-compile
@@ -8,7 +9,16 @@ mvn test-compile
 mvn dependency:build-classpath -DincludeScope=test -Dmdep.outputFile=scripts/classpath.txt
 
 # Run the benchmark
-java -cp $(cat scripts/classpath.txt):target/classes:target/test-classes --illegal-access=warn org.openjdk.jmh.Main BenchmarkPruner
+java -cp $(cat scripts/classpath.txt):target/classes:target/test-classes \
+    --add-exports jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.code=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.comp=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.main=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.model=ALL-UNNAMED \
+    --add-exports jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED \
+    --add-opens jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED \
+    org.openjdk.jmh.Main ${@:-BenchmarkPruner}
 
 # Clean up
-rm scripts/classpath.txt
\ No newline at end of file
+rm scripts/classpath.txt
@@ -10,7 +10,7 @@ JAVA_HOME="./jdks/mac/jdk-18"
 rm -rf dist/mac
 jlink \
   --module-path $JAVA_HOME/Contents/Home/jmods \
-  --add-modules java.base,java.compiler,java.logging,java.sql,java.xml,jdk.compiler,jdk.jdi,jdk.unsupported,jdk.zipfs \
+  --add-modules java.base,java.compiler,java.logging,java.sql,java.xml,jdk.compiler,jdk.jdi,jdk.jfr,jdk.unsupported,jdk.zipfs \
   --output dist/mac \
   --no-header-files \
   --no-man-pages \
@@ -0,0 +1,217 @@
+package org.javacs;
+
+import com.google.devtools.build.lib.analysis.AnalysisProtosV2.Action;
+import com.google.devtools.build.lib.analysis.AnalysisProtosV2.ActionGraphContainer;
+import com.google.devtools.build.lib.analysis.AnalysisProtosV2.Artifact;
+import com.google.devtools.build.lib.analysis.AnalysisProtosV2.PathFragment;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * ActionGraph reads the output of `bazel aquery --output=proto` one field at a time, keeping only the arguments and
+ * outputs of actions and the paths of artifacts. On a large workspace the whole ActionGraphContainer is hundreds of
+ * megabytes, most of it targets, dep sets and environment variables that we never look at.
+ *
+ * <p>Both versions of the format are supported. In analysis.proto, artifact ids are strings and each artifact has an
+ * exec path; in analysis_v2.proto, ids are numbers and paths are built from a tree of path fragments.
+ */
+class ActionGraph {
+    private static class Fragment {
+        final String label;
+        final int parentId;
+
+        Fragment(String label, int parentId) {
+            this.label = label;
+            this.parentId = parentId;
+        }
+    }
+
+    /** Arguments that follow `filterArgument` in any action */
+    private final Set<String> argumentPaths = new HashSet<>();
+    /** Artifacts that some action outputs */
+    private final Set<String> outputIds = new HashSet<>();
+    /** Artifact id => exec path, from analysis.proto */
+    private final Map<String, String> execPaths = new HashMap<>();
+    /** Artifact id => path fragment id, from analysis_v2.proto */
+    private final Map<String, Integer> fragmentIds = new HashMap<>();
+    private final Map<Integer, Fragment> fragments = new HashMap<>();
+    private final Map<Integer, String> fragmentPaths = new HashMap<>();
+    private final String filterArgument;
+    /** analysis_v2.proto, which all recent versions of bazel produce */
+    private boolean v2 = true;
+
+    private ActionGraph(String filterArgument) {
+        this.filterArgument = filterArgument;
+    }
+
+    /** Find the exec paths of artifacts that follow `filterArgument` in the arguments of the actions in `output` */
+    static Set<String> read(Path output, String filterArgument) {
+        var graph = new ActionGraph(filterArgument);
+        try (var stream = Files.newInputStream(output)) {
+            graph.readContainer(CodedInputStream.newInstance(stream));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return graph.artifactPaths();
+    }
+
+    private void readContainer(CodedInputStream input) throws IOException {
+        var seenArtifact = false;
+        while (true) {
+            var tag = input.readTag();
+            if (tag == 0) return;
+            var field = WireFormat.getTagFieldNumber(tag);
+            if (field != ActionGraphContainer.ARTIFACTS_FIELD_NUMBER
+                    && field != ActionGraphContainer.ACTIONS_FIELD_NUMBER
+                    && field != ActionGraphContainer.PATH_FRAGMENTS_FIELD_NUMBER) {
+                input.skipField(tag);
+                continue;
+            }
+            var limit = input.pushLimit(input.readRawVarint32());
+            switch (field) {
+                case ActionGraphContainer.ARTIFACTS_FIELD_NUMBER:
+                    // The types of the first artifact's fields tell us which version of the format this is
+                    readArtifact(input, !seenArtifact);
+                    seenArtifact = true;
+                    break;
+                case ActionGraphContainer.ACTIONS_FIELD_NUMBER:
+                    readAction(input);
+                    break;
+                case ActionGraphContainer.PATH_FRAGMENTS_FIELD_NUMBER:
+                    readPathFragment(input);
+                    break;
+            }
+            input.popLimit(limit);
+        }
+    }
+
+    private void readArtifact(CodedInputStream input, boolean first) throws IOException {
+        String id = "", execPath = "";
+        var fragmentId = 0;
+        while (true) {
+            var tag = input.readTag();
+            if (tag == 0) break;
+            var isString = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Artifact.ID_FIELD_NUMBER:
+                    if (first) v2 = !isString;
+                    id = isString ? input.readString() : Integer.toString(input.readUInt32());
+                    break;
+                case Artifact.PATH_FRAGMENT_ID_FIELD_NUMBER:
+                    if (first) v2 = !isString;
+                    if (isString) execPath = input.readString();
+                    else fragmentId = input.readUInt32();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        if (v2) fragmentIds.put(id.isEmpty() ? "0" : id, fragmentId);
+        else execPaths.put(id, execPath);
+    }
+
+    private void readAction(CodedInputStream input) throws IOException {
+        var isFilterArgument = false;
+        while (true) {
+            var tag = input.readTag();
+            if (tag == 0) return;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Action.ARGUMENTS_FIELD_NUMBER:
+                    var argument = input.readString();
+                    if (isFilterArgument && argument.startsWith("-")) {
+                        isFilterArgument = false;
+                        continue;
+                    }
+                    if (!isFilterArgument) {
+                        isFilterArgument = argument.equals(filterArgument);
+                        continue;
+                    }
+                    argumentPaths.add(argument);
+                    break;
+                case Action.OUTPUT_IDS_FIELD_NUMBER:
+                    readOutputIds(input, tag);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+    }
+
+    private void readOutputIds(CodedInputStream input, int tag) throws IOException {
+        if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT) {
+            outputIds.add(Integer.toString(input.readUInt32()));
+        } else if (!v2) {
+            outputIds.add(input.readString());
+        } else {
+            // Packed repeated uint32
+            var limit = input.pushLimit(input.readRawVarint32());
+            while (input.getBytesUntilLimit() > 0) {
+                outputIds.add(Integer.toString(input.readUInt32()));
+            }
+            input.popLimit(limit);
+        }
+    }
+
+    private void readPathFragment(CodedInputStream input) throws IOException {
+        var id = 0;
+        var parentId = 0;
+        var label = "";
+        while (true) {
+            var tag = input.readTag();
+            if (tag == 0) break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case PathFragment.ID_FIELD_NUMBER:
+                    id = input.readUInt32();
+                    break;
+                case PathFragment.LABEL_FIELD_NUMBER:
+                    label = input.readString();
+                    break;
+                case PathFragment.PARENT_ID_FIELD_NUMBER:
+                    parentId = input.readUInt32();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        fragments.put(id, new Fragment(label, parentId));
+    }
+
+    private Set<String> artifactPaths() {
+        var artifactPaths = new HashSet<String>();
+        var ids = new HashSet<String>(execPaths.keySet());
+        ids.addAll(fragmentIds.keySet());
+        for (var id : ids) {
+            if (outputIds.contains(id) && !filterArgument.equals("--output")) {
+                // artifact is the output of another java action
+                continue;
+            }
+            var relative = execPaths.containsKey(id) ? execPaths.get(id) : fragmentPath(fragmentIds.get(id));
+            if (!argumentPaths.contains(relative)) {
+                // artifact was not specified by --filterArgument
+                continue;
+            }
+            LOG.info("...found bazel dependency " + relative);
+            artifactPaths.add(relative);
+        }
+        return artifactPaths;
+    }
+
+    private String fragmentPath(int id) {
+        var cached = fragmentPaths.get(id);
+        if (cached != null) return cached;
+        var fragment = fragments.get(id);
+        if (fragment == null) {
+            throw new RuntimeException("No path fragment " + id);
+        }
+        var path = fragment.parentId == 0 ? fragment.label : fragmentPath(fragment.parentId) + "/" + fragment.label;
+        fragmentPaths.put(id, path);
+        return path;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -2,9 +2,9 @@ package org.javacs;
 
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
 class Cache<K, V> {
@@ -39,7 +39,8 @@ class Cache<K, V> {
         }
     }
 
-    private final Map<Key, Value> map = new HashMap<>();
+    // StringSearch's caches are shared by the request workers and the linter
+    private final Map<Key, Value> map = new ConcurrentHashMap<>();
 
     boolean has(Path file, K k) {
         return !needs(file, k);
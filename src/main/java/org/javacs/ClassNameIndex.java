@@ -0,0 +1,120 @@
+package org.javacs;
+
+import java.util.*;
+
+/**
+ * ClassNameIndex answers prefix queries over a fixed set of qualified class names using binary searches over sorted
+ * arrays, so completing a class name costs O(log n + results) instead of a scan of every class.
+ */
+class ClassNameIndex {
+    /**
+     * Each class as `packageName + ' ' + simpleName`, sorted, so the classes of each package are contiguous. Simple names
+     * never contain spaces, but a package name sniffed from a malformed file might, so we always split at the last space.
+     */
+    private final String[] byPackage;
+    /** Indexes into byPackage, sorted by simple name */
+    private final int[] bySimpleName;
+    /** Distinct package names, sorted */
+    private final String[] packageNames;
+
+    static final ClassNameIndex EMPTY = new ClassNameIndex(List.of());
+
+    ClassNameIndex(Collection<String> classNames) {
+        var keys = new TreeSet<String>();
+        var packages = new TreeSet<String>();
+        for (var className : classNames) {
+            var dot = className.lastIndexOf('.');
+            var packageName = dot == -1 ? "" : className.substring(0, dot);
+            // ' ' sorts before '.' and every identifier character, so "a.b C" comes before "a.b.c D"
+            keys.add(packageName + ' ' + className.substring(dot + 1));
+            packages.add(packageName);
+        }
+        this.byPackage = keys.toArray(String[]::new);
+        this.packageNames = packages.toArray(String[]::new);
+        var order = new Integer[byPackage.length];
+        for (var i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareSimpleNames(byPackage[a], byPackage[b]));
+        this.bySimpleName = new int[order.length];
+        for (var i = 0; i < order.length; i++) {
+            bySimpleName[i] = order[i];
+        }
+    }
+
+    int size() {
+        return byPackage.length;
+    }
+
+    /** Qualified names of up to `limit` classes whose simple name starts with `partialName` */
+    List<String> named(String partialName, int limit) {
+        var result = new ArrayList<String>();
+        // Find the first class whose simple name is >= partialName
+        int lo = 0, hi = bySimpleName.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (compareSimpleName(byPackage[bySimpleName[mid]], partialName) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        for (var i = lo; i < bySimpleName.length && result.size() < limit; i++) {
+            var key = byPackage[bySimpleName[i]];
+            if (!key.startsWith(partialName, key.lastIndexOf(' ') + 1)) break;
+            result.add(qualifiedName(key));
+        }
+        return result;
+    }
+
+    /** Qualified names of up to `limit` classes in `packageName` whose simple name starts with `partialName` */
+    List<String> inPackage(String packageName, String partialName, int limit) {
+        var prefix = packageName + ' ' + partialName;
+        var result = new ArrayList<String>();
+        for (var i = lowerBound(byPackage, prefix); i < byPackage.length && result.size() < limit; i++) {
+            if (!byPackage[i].startsWith(prefix)) break;
+            result.add(qualifiedName(byPackage[i]));
+        }
+        return result;
+    }
+
+    /** Names of packages that contain at least one class and start with `prefix` */
+    List<String> packages(String prefix) {
+        var result = new ArrayList<String>();
+        for (var i = lowerBound(packageNames, prefix); i < packageNames.length; i++) {
+            if (!packageNames[i].startsWith(prefix)) break;
+            result.add(packageNames[i]);
+        }
+        return result;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        var i = Arrays.binarySearch(sorted, key);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    private static String qualifiedName(String key) {
+        var space = key.lastIndexOf(' ');
+        if (space == 0) return key.substring(1);
+        return key.substring(0, space) + '.' + key.substring(space + 1);
+    }
+
+    /** Compare the simple name in `key` to `partialName`, without allocating a substring */
+    private static int compareSimpleName(String key, String partialName) {
+        var start = key.lastIndexOf(' ') + 1;
+        var length = Math.min(key.length() - start, partialName.length());
+        for (var i = 0; i < length; i++) {
+            var diff = key.charAt(start + i) - partialName.charAt(i);
+            if (diff != 0) return diff;
+        }
+        return (key.length() - start) - partialName.length();
+    }
+
+    private static int compareSimpleNames(String a, String b) {
+        int i = a.lastIndexOf(' ') + 1, j = b.lastIndexOf(' ') + 1;
+        for (; i < a.length() && j < b.length(); i++, j++) {
+            var diff = a.charAt(i) - b.charAt(j);
+            if (diff != 0) return diff;
+        }
+        var bySimpleName = (a.length() - i) - (b.length() - j);
+        if (bySimpleName != 0) return bySimpleName;
+        return a.compareTo(b);
+    }
+}
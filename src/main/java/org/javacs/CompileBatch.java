@@ -26,6 +26,8 @@ class CompileBatch implements AutoCloseable {
     final List<CompilationUnitTree> roots;
 
     CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+        var event = new Events.Compile();
+        event.begin();
         this.parent = parent;
         this.borrow = batchTask(parent, files);
         this.task = borrow.task;
@@ -44,6 +46,14 @@ class CompileBatch implements AutoCloseable {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.files = roots.size();
+            for (var root : roots) {
+                event.chars += trees.getSourcePositions().getEndPosition(root, root);
+            }
+            event.commit();
+        }
     }
 
     /**
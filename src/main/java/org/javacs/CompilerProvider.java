@@ -11,7 +11,14 @@ import javax.tools.JavaFileObject;
 public interface CompilerProvider {
     Set<String> imports();
 
-    List<String> publicTopLevelTypes();
+    /** Public top-level classes whose simple name starts with `partialName`, at most `limit` of them */
+    List<String> publicTopLevelTypes(String partialName, int limit);
+
+    /** Public top-level classes in `packageName` whose simple name starts with `partialName` */
+    List<String> publicTopLevelTypes(String packageName, String partialName, int limit);
+
+    /** Packages that start with `prefix` and contain at least one public top-level class */
+    List<String> packageNames(String prefix);
 
     List<String> packagePrivateTopLevelTypes(String packageName);
 
@@ -33,5 +40,8 @@ public interface CompilerProvider {
 
     CompileTask compile(Collection<? extends JavaFileObject> sources);
 
+    /** Compile `file` with every method body erased, except the one that contains `line:column` */
+    CompileTask compilePruned(Path file, int line, int column);
+
     Path NOT_FOUND = Paths.get("");
 }
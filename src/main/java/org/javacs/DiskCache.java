@@ -0,0 +1,67 @@
+package org.javacs;
+
+import static org.javacs.JsonHelper.GSON;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DiskCache stores JSON documents in the user's cache directory, so expensive indexes survive restarts. Failing to read
+ * or write the cache is never fatal; the caller just recomputes the value.
+ */
+class DiskCache {
+
+    /** Overrides the cache directory, so tests don't read or overwrite the user's real cache */
+    static final String DIRECTORY_PROPERTY = "org.javacs.cacheDirectory";
+
+    static Path directory() {
+        var override = System.getProperty(DIRECTORY_PROPERTY);
+        if (override != null && !override.isBlank()) {
+            return Paths.get(override);
+        }
+        var xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isBlank()) {
+            return Paths.get(xdg).resolve("java-language-server");
+        }
+        return Paths.get(System.getProperty("user.home")).resolve(".cache").resolve("java-language-server");
+    }
+
+    static <T> Optional<T> read(String name, Type type) {
+        var file = directory().resolve(name);
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            T value = GSON.fromJson(reader, type);
+            return Optional.ofNullable(value);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to read cache " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    static void write(String name, Object value) {
+        var file = directory().resolve(name);
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temporary file and move it into place, so a concurrent reader never sees half a document
+            var temp = Files.createTempFile(file.getParent(), name, ".tmp");
+            try (var writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(value, writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to write cache " + file, e);
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
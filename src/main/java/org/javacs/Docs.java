@@ -1,54 +1,229 @@
 package org.javacs;
 
+import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
+import java.util.zip.ZipFile;
 import javax.tools.*;
 
 public class Docs {
 
-    /** File manager with source-path + platform sources, which we will use to look up individual source files */
+    /** File manager with source-path directories, which we will use to look up individual source files */
     final SourceFileManager fileManager = new SourceFileManager();
 
+    /** className -> location of the source file in src.zip or a source .jar on the doc path */
+    private final Map<String, SourceEntry> index = new HashMap<>();
+
+    private static class SourceEntry {
+        final Path archive;
+        final String entry;
+
+        SourceEntry(Path archive, String entry) {
+            this.archive = archive;
+            this.entry = entry;
+        }
+    }
+
     Docs(Set<Path> docPath) {
+        var started = Instant.now();
+        // Directories on the doc path are searched by the file manager, .jar and .zip files are indexed
+        var directories = new ArrayList<Path>();
+        var archives = new ArrayList<Path>();
+        for (var p : docPath) {
+            if (Files.isDirectory(p)) {
+                directories.add(p);
+            } else if (Files.isRegularFile(p)) {
+                archives.add(p);
+            }
+        }
+        try {
+            fileManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, directories);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // Source .jars take priority over src.zip
         var srcZipPath = srcZip();
-        // Path to source .jars + src.zip
-        var sourcePath = new ArrayList<Path>(docPath);
         if (srcZipPath != NOT_FOUND) {
-            sourcePath.add(srcZipPath);
+            addToIndex(srcZipPath, true);
+        }
+        for (var jar : archives) {
+            addToIndex(jar, false);
         }
+        saveArchiveIndexes();
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("Indexed %,d source files on the doc path in %,d ms", index.size(), elapsed));
+    }
+
+    /** Find the source file that declares the public top-level class `className`. */
+    Optional<JavaFileObject> find(String className) {
+        // Files in the workspace and source directories shadow archives
         try {
-            fileManager.setLocationFromPaths(StandardLocation.SOURCE_PATH, sourcePath);
-            if (srcZipPath != NOT_FOUND) {
-                fileManager.setLocationFromPaths(StandardLocation.MODULE_SOURCE_PATH, Set.of(srcZipPath));
+            var found =
+                    fileManager.getJavaFileForInput(
+                            StandardLocation.SOURCE_PATH, className, JavaFileObject.Kind.SOURCE);
+            if (found != null) {
+                return Optional.of(found);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        var entry = index.get(className);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        var path = archive(entry.archive).getPath(entry.entry);
+        // The archive may have been replaced since we indexed it
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(fileManager.getJavaFileObject(path));
     }
 
-    private static final Path NOT_FOUND = Paths.get("");
-    private static Path cacheSrcZip;
+    private void addToIndex(Path archive, boolean modular) {
+        for (var entry : archiveIndex(archive, modular).classes.entrySet()) {
+            index.put(entry.getKey(), new SourceEntry(archive, entry.getValue()));
+        }
+    }
 
-    private static Path srcZip() {
-        if (cacheSrcZip == null) {
-            cacheSrcZip = findSrcZip();
+    /** ArchiveIndex maps className -> entry of each .java file in an archive, for a given size and modified time */
+    private static class ArchiveIndex {
+        long size, modified;
+        Map<String, String> classes = Map.of();
+    }
+
+    private static final String ARCHIVE_INDEX_CACHE = "source-index.json";
+
+    private static Map<String, ArchiveIndex> cacheArchiveIndexes;
+    private static boolean modifiedArchiveIndexes;
+
+    private static synchronized Map<String, ArchiveIndex> archiveIndexes() {
+        if (cacheArchiveIndexes == null) {
+            var type = new TypeToken<Map<String, ArchiveIndex>>() {}.getType();
+            Map<String, ArchiveIndex> saved =
+                    DiskCache.<Map<String, ArchiveIndex>>read(ARCHIVE_INDEX_CACHE, type).orElse(Map.of());
+            cacheArchiveIndexes = new ConcurrentHashMap<>(saved);
         }
-        if (cacheSrcZip == NOT_FOUND) {
-            return NOT_FOUND;
+        return cacheArchiveIndexes;
+    }
+
+    private static synchronized void saveArchiveIndexes() {
+        if (!modifiedArchiveIndexes) return;
+        // Forget archives that have been deleted, so the cache doesn't grow forever
+        archiveIndexes().keySet().removeIf(archive -> !Files.exists(Paths.get(archive)));
+        DiskCache.write(ARCHIVE_INDEX_CACHE, archiveIndexes());
+        modifiedArchiveIndexes = false;
+    }
+
+    private static synchronized ArchiveIndex archiveIndex(Path archive, boolean modular) {
+        var key = archive.toAbsolutePath().normalize().toString();
+        long size, modified;
+        try {
+            size = Files.size(archive);
+            modified = Files.getLastModifiedTime(archive).toMillis();
+        } catch (IOException e) {
+            LOG.warning("Couldn't read " + archive + ": " + e.getMessage());
+            return new ArchiveIndex();
+        }
+        var cached = archiveIndexes().get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            return cached;
+        }
+        var scanned = scanArchive(archive, modular);
+        // Don't remember failed scans, so an archive that is still being downloaded is indexed again next time
+        if (scanned.isEmpty()) return new ArchiveIndex();
+        var index = scanned.get();
+        index.size = size;
+        index.modified = modified;
+        archiveIndexes().put(key, index);
+        modifiedArchiveIndexes = true;
+        return index;
+    }
+
+    private static Optional<ArchiveIndex> scanArchive(Path archive, boolean modular) {
+        LOG.info("Indexing source files in " + archive);
+        var index = new ArchiveIndex();
+        var classes = new HashMap<String, String>();
+        try (var zip = new ZipFile(archive.toFile())) {
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement().getName();
+                if (!entry.endsWith(".java")) continue;
+                var relative = entry;
+                // src.zip is organized as module/package/Class.java
+                if (modular) {
+                    var slash = relative.indexOf('/');
+                    if (slash == -1) continue;
+                    relative = relative.substring(slash + 1);
+                }
+                var trim = relative.substring(0, relative.length() - ".java".length());
+                if (trim.contains("-")) continue; // package-info.java, module-info.java
+                classes.putIfAbsent(trim.replace('/', '.'), "/" + entry);
+            }
+            index.classes = classes;
+        } catch (IOException e) {
+            LOG.warning("Couldn't index " + archive + ": " + e.getMessage());
+            return Optional.empty();
+        }
+        return Optional.of(index);
+    }
+
+    /** An open archive, for a given size and modified time, like ArchiveIndex */
+    private static class OpenArchive {
+        final long size, modified;
+        final FileSystem fs;
+
+        OpenArchive(long size, long modified, FileSystem fs) {
+            this.size = size;
+            this.modified = modified;
+            this.fs = fs;
         }
+    }
+
+    private static final Map<Path, OpenArchive> archives = new HashMap<>();
+
+    /**
+     * Open each archive once, and share it between all instances of Docs. If the archive has been replaced, for example
+     * by downloading a new SNAPSHOT, close the old one and open it again.
+     */
+    private static synchronized FileSystem archive(Path archive) {
         try {
-            var fs = FileSystems.newFileSystem(cacheSrcZip, Docs.class.getClassLoader());
-            return fs.getPath("/");
+            var size = Files.size(archive);
+            var modified = Files.getLastModifiedTime(archive).toMillis();
+            var open = archives.get(archive);
+            if (open != null && open.size == size && open.modified == modified) {
+                return open.fs;
+            }
+            if (open != null) {
+                LOG.info("Reopening " + archive + " because it changed");
+                open.fs.close();
+            }
+            var fs = FileSystems.newFileSystem(archive, Docs.class.getClassLoader());
+            archives.put(archive, new OpenArchive(size, modified, fs));
+            return fs;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static final Path NOT_FOUND = Paths.get("");
+    private static Path cacheSrcZip;
+
+    private static Path srcZip() {
+        if (cacheSrcZip == null) {
+            cacheSrcZip = findSrcZip();
+        }
+        return cacheSrcZip;
+    }
+
     private static Path findSrcZip() {
         var javaHome = JavaHomeHelper.javaHome();
         String[] locations = {
@@ -0,0 +1,92 @@
+package org.javacs;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder events for the things that can make the server stall: compiling, parsing, searching files, reading
+ * files from disk and running build tools. They cost almost nothing unless a recording is running, which the client can
+ * start and stop with the `java/startRecording` and `java/stopRecording` requests.
+ */
+class Events {
+    private static final String CATEGORY = "Java Language Server";
+
+    @Name("org.javacs.Compile")
+    @Label("Compile")
+    @Category(CATEGORY)
+    static class Compile extends Event {
+        @Label("Files")
+        int files;
+
+        @Label("Characters")
+        @DataAmount(DataAmount.BYTES)
+        long chars;
+    }
+
+    @Name("org.javacs.Parse")
+    @Label("Parse")
+    @Category(CATEGORY)
+    static class Parse extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Characters")
+        @DataAmount(DataAmount.BYTES)
+        long chars;
+    }
+
+    @Name("org.javacs.Search")
+    @Label("Search File")
+    @Description("Read a file from disk to check if it contains a name")
+    @Category(CATEGORY)
+    static class Search extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Query")
+        String query;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    @Name("org.javacs.ReadFile")
+    @Label("Read File")
+    @Category(CATEGORY)
+    static class ReadFile extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Characters")
+        @DataAmount(DataAmount.BYTES)
+        long chars;
+    }
+
+    @Name("org.javacs.ScanWorkspace")
+    @Label("Scan Workspace")
+    @Description("Walk a workspace root to find java sources and their packages")
+    @Category(CATEGORY)
+    static class ScanWorkspace extends Event {
+        @Label("Root")
+        String root;
+
+        @Label("Files")
+        int files;
+    }
+
+    @Name("org.javacs.Subprocess")
+    @Label("Subprocess")
+    @Description("Run a build tool to infer the class path")
+    @Category(CATEGORY)
+    static class Subprocess extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Exit Code")
+        int exitCode;
+
+        @Label("Output")
+        @DataAmount(DataAmount.BYTES)
+        long outputBytes;
+    }
+}
@@ -6,22 +6,30 @@ import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import javax.lang.model.element.TypeElement;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
 import org.javacs.lsp.DidOpenTextDocumentParams;
+import org.javacs.lsp.Position;
 import org.javacs.lsp.TextDocumentContentChangeEvent;
 
 public class FileStore {
 
     private static final Set<Path> workspaceRoots = new HashSet<>();
 
-    private static final Map<Path, VersionedContent> activeDocuments = new HashMap<>();
+    // Documents and sources are read by the background linter, so they need to be safe to read from other threads
+    private static final Map<Path, VersionedContent> activeDocuments = new ConcurrentHashMap<>();
 
     /** javaSources[file] is the javaSources time of a .java source file. */
     // TODO organize by package name for speed of list(...)
-    private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
+    private static final ConcurrentSkipListMap<Path, Info> javaSources = new ConcurrentSkipListMap<>();
+
+    /** Incremented whenever a source file is added, removed or moved to another package */
+    private static final AtomicLong version = new AtomicLong();
 
     private static class Info {
         final Instant modified;
@@ -58,11 +66,20 @@ public class FileStore {
     }
 
     private static void addFiles(Path root) {
+        var event = new Events.ScanWorkspace();
+        event.begin();
+        var before = javaSources.size();
         try {
             Files.walkFileTree(root, new FindJavaSources());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.root = root.toString();
+            event.files = javaSources.size() - before;
+            event.commit();
+        }
     }
 
     static class FindJavaSources extends SimpleFileVisitor<Path> {
@@ -88,6 +105,10 @@ public class FileStore {
         return javaSources.keySet();
     }
 
+    public static long version() {
+        return version.get();
+    }
+
     static List<Path> list(String packageName) {
         var list = new ArrayList<Path>();
         for (var file : javaSources.keySet()) {
@@ -128,10 +149,11 @@ public class FileStore {
         return isJavaFile(file) && javaSources.containsKey(file);
     }
 
-    static Instant modified(Path file) {
+    public static Instant modified(Path file) {
         // If file is open, use last in-memory modification time
-        if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).modified;
+        var open = activeDocuments.get(file);
+        if (open != null) {
+            return open.modified;
         }
         // If we've never checked before, look up modified time on disk
         if (!javaSources.containsKey(file)) {
@@ -188,17 +210,24 @@ public class FileStore {
     }
 
     static void externalDelete(Path file) {
-        javaSources.remove(file);
+        if (javaSources.remove(file) != null) {
+            version.incrementAndGet();
+        }
     }
 
     private static void readInfoFromDisk(Path file) {
         try {
             var time = Files.getLastModifiedTime(file).toInstant();
             var packageName = StringSearch.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            var previous = javaSources.put(file, new Info(time, packageName));
+            if (previous == null || !previous.packageName.equals(packageName)) {
+                version.incrementAndGet();
+            }
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
-            javaSources.remove(file);
+            if (javaSources.remove(file) != null) {
+                version.incrementAndGet();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -220,12 +249,17 @@ public class FileStore {
             LOG.warning("Ignored change with version " + document.version + " <= " + existing.version);
             return;
         }
-        var newText = existing.content;
+        // The reader coalesces bursts of edits into one notification, so apply them all to one buffer
+        var newText = new StringBuilder(existing.content);
         for (var change : params.contentChanges) {
-            if (change.range == null) newText = change.text;
-            else newText = patch(newText, change);
+            if (change.range == null) {
+                newText.setLength(0);
+                newText.append(change.text);
+            } else {
+                patch(newText, change);
+            }
         }
-        activeDocuments.put(file, new VersionedContent(newText, document.version));
+        activeDocuments.put(file, new VersionedContent(newText.toString(), document.version));
     }
 
     static void close(DidCloseTextDocumentParams params) {
@@ -242,11 +276,21 @@ public class FileStore {
         if (!isJavaFile(file)) {
             throw new RuntimeException(file + " is not a java file");
         }
-        if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).content;
+        var open = activeDocuments.get(file);
+        if (open != null) {
+            return open.content;
         }
+        var event = new Events.ReadFile();
+        event.begin();
         try {
-            return Files.readString(file);
+            var contents = Files.readString(file);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = file.toString();
+                event.chars = contents.length();
+                event.commit();
+            }
+            return contents;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return "";
@@ -294,7 +338,7 @@ public class FileStore {
     }
 
     /** Convert from line/column (1-based) to offset (0-based) */
-    static int offset(String contents, int line, int column) {
+    public static int offset(String contents, int line, int column) {
         line--;
         column--;
         int cursor = 0;
@@ -307,51 +351,27 @@ public class FileStore {
         return cursor + column;
     }
 
-    private static String patch(String sourceText, TextDocumentContentChangeEvent change) {
-        try {
-            var range = change.range;
-            var reader = new BufferedReader(new StringReader(sourceText));
-            var writer = new StringWriter();
-
-            // Skip unchanged lines
-            int line = 0;
-
-            while (line < range.start.line) {
-                writer.write(reader.readLine() + '\n');
-                line++;
-            }
-
-            // Skip unchanged chars
-            for (int character = 0; character < range.start.character; character++) {
-                writer.write(reader.read());
-            }
-
-            // Write replacement text
-            writer.write(change.text);
-
-            // Skip replaced text
-            if (change.range.start.line == change.range.end.line) {
-                int chars = change.range.end.character - change.range.start.character;
-                reader.skip(chars);
-            } else {
-                int lines = change.range.end.line - change.range.start.line;
-                int chars = change.range.end.character;
-                for (int lineSkip = 0; lineSkip < lines; lineSkip++) {
-                    reader.readLine();                    
-                }
-                reader.skip(chars);
-            }
-
-            // Write remaining text
-            while (true) {
-                int next = reader.read();
+    private static void patch(StringBuilder text, TextDocumentContentChangeEvent change) {
+        var start = offset(text, change.range.start);
+        var end = Math.max(start, offset(text, change.range.end));
+        text.replace(start, end, change.text);
+    }
 
-                if (next == -1) return writer.toString();
-                else writer.write(next);
+    /** Convert from a 0-based position to an offset, clamped to the end of the line */
+    private static int offset(CharSequence text, Position position) {
+        var cursor = 0;
+        for (var line = 0; line < position.line; line++) {
+            while (cursor < text.length() && text.charAt(cursor) != '\n') {
+                cursor++;
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (cursor == text.length()) return cursor;
+            cursor++;
+        }
+        for (var character = 0; character < position.character; character++) {
+            if (cursor == text.length() || text.charAt(cursor) == '\n') break;
+            cursor++;
         }
+        return cursor;
     }
 
     static boolean isJavaFile(Path file) {
@@ -0,0 +1,159 @@
+package org.javacs;
+
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * GradleCache finds jars in gradle's cache, which are laid out as
+ * caches/modules-*&#47;files-*&#47;groupId/artifactId/version/hash/artifactId-version.jar. It indexes the whole cache
+ * in one walk the first time, and saves the index in DiskCache. After that, each lookup is a map probe, and only an
+ * artifact that isn't in the index, or whose jar has been deleted, is looked up on disk again.
+ */
+class GradleCache {
+    /** The jars in one gradle home, by groupId:artifactId:version */
+    private static class Index {
+        Map<String, List<String>> jars = new HashMap<>();
+    }
+
+    private static final String GRADLE_INDEX_CACHE = "gradle-index.json";
+
+    /** Indexes by gradle home */
+    private static Map<String, Index> cacheIndexes;
+
+    private static boolean dirty;
+
+    private static synchronized Index index(Path gradleHome) {
+        if (cacheIndexes == null) {
+            var type = new TypeToken<Map<String, Index>>() {}.getType();
+            Map<String, Index> saved = DiskCache.<Map<String, Index>>read(GRADLE_INDEX_CACHE, type).orElse(Map.of());
+            cacheIndexes = new HashMap<>(saved);
+        }
+        var key = gradleHome.toAbsolutePath().normalize().toString();
+        var index = cacheIndexes.get(key);
+        if (index == null) {
+            index = walk(gradleHome);
+            cacheIndexes.put(key, index);
+            dirty = true;
+        }
+        return index;
+    }
+
+    /** Find `fileName`, which is artifactId-version.jar or artifactId-version-sources.jar, in `gradleHome` */
+    static synchronized Optional<Path> find(Path gradleHome, Artifact artifact, String fileName) {
+        var index = index(gradleHome);
+        var found = probe(index, artifact, fileName);
+        if (found.isPresent()) return found;
+        // The artifact may have been downloaded since the index was saved
+        var jars = jars(gradleHome, artifact);
+        var key = key(artifact);
+        if (!jars.equals(index.jars.getOrDefault(key, List.of()))) {
+            if (jars.isEmpty()) index.jars.remove(key);
+            else index.jars.put(key, jars);
+            dirty = true;
+        }
+        return probe(index, artifact, fileName);
+    }
+
+    /** Save the index if lookups have changed it */
+    static synchronized void save() {
+        if (!dirty) return;
+        // Forget gradle homes that have been deleted, so the cache doesn't grow forever
+        cacheIndexes.keySet().removeIf(home -> !Files.exists(Path.of(home)));
+        DiskCache.write(GRADLE_INDEX_CACHE, cacheIndexes);
+        dirty = false;
+    }
+
+    private static Optional<Path> probe(Index index, Artifact artifact, String fileName) {
+        for (var jar : index.jars.getOrDefault(key(artifact), List.of())) {
+            var path = Path.of(jar);
+            if (path.getFileName().toString().equals(fileName) && Files.exists(path)) {
+                return Optional.of(path);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String key(Artifact artifact) {
+        return artifact.groupId + ":" + artifact.artifactId + ":" + artifact.version;
+    }
+
+    /** The caches/modules-*&#47;files-* directories, which contain groupId/artifactId/version/hash/*.jar */
+    private static List<Path> filesDirectories(Path gradleHome) {
+        var result = new ArrayList<Path>();
+        for (var modules : directories(gradleHome.resolve("caches"), "modules-")) {
+            result.addAll(directories(modules, "files-"));
+        }
+        return result;
+    }
+
+    private static List<Path> directories(Path dir, String prefix) {
+        if (!Files.isDirectory(dir)) return List.of();
+        var result = new ArrayList<Path>();
+        try (var stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (var child : stream) {
+                if (Files.isDirectory(child)) result.add(child);
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /** List the jars of one artifact, without walking the rest of the cache */
+    private static List<String> jars(Path gradleHome, Artifact artifact) {
+        var jars = new ArrayList<String>();
+        for (var files : filesDirectories(gradleHome)) {
+            var version = files.resolve(artifact.groupId).resolve(artifact.artifactId).resolve(artifact.version);
+            for (var hash : directories(version, "")) {
+                try (var stream = Files.newDirectoryStream(hash, "*.jar")) {
+                    for (var jar : stream) {
+                        jars.add(jar.toString());
+                    }
+                } catch (NoSuchFileException e) {
+                    continue;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        Collections.sort(jars);
+        return jars;
+    }
+
+    /** Index every jar in the cache in one walk */
+    private static Index walk(Path gradleHome) {
+        var started = Instant.now();
+        var index = new Index();
+        for (var files : filesDirectories(gradleHome)) {
+            // groupId/artifactId/version/hash/*.jar
+            try (var stream = Files.walk(files, 5)) {
+                stream.forEach(
+                        jar -> {
+                            var relative = files.relativize(jar);
+                            if (relative.getNameCount() != 5 || !jar.toString().endsWith(".jar")) return;
+                            var key = relative.getName(0) + ":" + relative.getName(1) + ":" + relative.getName(2);
+                            index.jars.computeIfAbsent(key, __ -> new ArrayList<>()).add(jar.toString());
+                        });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for (var jars : index.jars.values()) {
+            Collections.sort(jars);
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("Indexed %d artifacts in %s in %d ms", index.jars.size(), gradleHome, elapsed));
+        return index;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,15 +1,23 @@
 package org.javacs;
 
-import com.google.devtools.build.lib.analysis.AnalysisProtos;
-import com.google.devtools.build.lib.analysis.AnalysisProtosV2;
-import com.google.devtools.build.lib.analysis.AnalysisProtosV2.PathFragment;
+import com.google.gson.reflect.TypeToken;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -63,12 +71,17 @@ class InferConfig {
                 }
                 result.add(found);
             }
+            GradleCache.save();
             return result;
         }
 
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
+            var resolved = resolvePom(pomXml);
+            if (resolved.isPresent()) {
+                return resolved.get().classPath;
+            }
             return mvnDependencies(pomXml, "dependency:list");
         }
 
@@ -104,12 +117,17 @@ class InferConfig {
                 }
                 result.add(found);
             }
+            GradleCache.save();
             return result;
         }
 
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
+            var resolved = resolvePom(pomXml);
+            if (resolved.isPresent()) {
+                return resolved.get().docPath;
+            }
             return mvnDependencies(pomXml, "dependency:sources");
         }
 
@@ -122,6 +140,188 @@ class InferConfig {
         return Collections.emptySet();
     }
 
+    private Optional<PomResolver.Resolved> cachedResolve;
+
+    /** Resolve the dependencies in pom.xml from the local repository, without running maven, if possible */
+    private Optional<PomResolver.Resolved> resolvePom(Path pomXml) {
+        if (cachedResolve == null) {
+            cachedResolve = new PomResolver(mavenHome.resolve("repository")).resolve(pomXml);
+        }
+        return cachedResolve;
+    }
+
+    /**
+     * True if the doc path was read from the local repository and some dependencies have no source jar there. Running
+     * `mvn dependency:sources` would download them, like it did before we read the POMs ourselves.
+     */
+    boolean isMissingSources() {
+        if (cachedResolve == null || cachedResolve.isEmpty()) return false;
+        return !cachedResolve.get().missingSources.isEmpty();
+    }
+
+    /** Download the missing source jars with maven, and save the doc path it reports. True if the doc path grew. */
+    boolean downloadSources(MavenConfig config) {
+        var pomXml = workspaceRoot.resolve("pom.xml");
+        LOG.info(cachedResolve.get().missingSources.size() + " dependencies have no sources in " + mavenHome);
+        var downloaded = mvnDependencies(pomXml, "dependency:sources");
+        var docPath = config.docPath();
+        if (!docPath.addAll(downloaded)) return false;
+        config.docPath = strings(docPath);
+        saveMavenConfig(cacheKey(), config);
+        return true;
+    }
+
+    /** True if the class path comes from running maven, which is slow enough that the result is worth caching */
+    boolean isMaven() {
+        return externalDependencies.isEmpty() && Files.exists(workspaceRoot.resolve("pom.xml"));
+    }
+
+    /** MavenConfig is what maven reported for a workspace, along with the fingerprint of the build files it read */
+    static class MavenConfig {
+        String fingerprint;
+        List<String> classPath = List.of(), docPath = List.of();
+
+        Set<Path> classPath() {
+            return paths(classPath);
+        }
+
+        Set<Path> docPath() {
+            return paths(docPath);
+        }
+    }
+
+    private static final String MAVEN_CONFIG_CACHE = "maven-config.json";
+
+    private static Map<String, MavenConfig> readMavenConfigs() {
+        var type = new TypeToken<Map<String, MavenConfig>>() {}.getType();
+        return DiskCache.<Map<String, MavenConfig>>read(MAVEN_CONFIG_CACHE, type).orElse(Map.of());
+    }
+
+    private String cacheKey() {
+        return workspaceRoot.toAbsolutePath().normalize().toString();
+    }
+
+    /** What maven last reported for this workspace, even if the build files have changed since */
+    Optional<MavenConfig> cachedMavenConfig() {
+        var config = readMavenConfigs().get(cacheKey());
+        if (config == null) return Optional.empty();
+        // If ~/.m2 has been cleaned out, the cached class path is no use
+        for (var jar : config.classPath) {
+            if (!Files.exists(Paths.get(jar))) {
+                LOG.info("Ignoring cached class path because " + jar + " no longer exists");
+                return Optional.empty();
+            }
+        }
+        return Optional.of(config);
+    }
+
+    /** Run maven, and save what it reports for next time */
+    MavenConfig inferMavenConfig() {
+        var config = new MavenConfig();
+        // Take the fingerprint first, so if a pom.xml is edited while maven is running, the result is already stale
+        config.fingerprint = mavenFingerprint();
+        config.classPath = strings(classPath());
+        config.docPath = strings(buildDocPath());
+        // An empty class path usually means maven failed, so try again next time
+        if (!config.classPath.isEmpty()) {
+            saveMavenConfig(cacheKey(), config);
+        }
+        return config;
+    }
+
+    private static synchronized void saveMavenConfig(String key, MavenConfig config) {
+        var configs = new HashMap<>(readMavenConfigs());
+        configs.put(key, config);
+        // Forget workspaces that have been deleted, so the cache doesn't grow forever
+        configs.keySet().removeIf(root -> !Files.exists(Paths.get(root, "pom.xml")));
+        DiskCache.write(MAVEN_CONFIG_CACHE, configs);
+    }
+
+    private static Set<Path> paths(List<String> strings) {
+        var paths = new HashSet<Path>();
+        for (var s : strings) {
+            paths.add(Paths.get(s));
+        }
+        return paths;
+    }
+
+    private static List<String> strings(Set<Path> paths) {
+        var strings = new ArrayList<String>();
+        for (var p : paths) {
+            strings.add(p.toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+
+    /**
+     * Hash everything that can change what maven reports: every pom.xml in the workspace, the workspace's .mvn
+     * directory, and the user's ~/.m2/settings.xml
+     */
+    String mavenFingerprint() {
+        var files = pomFiles();
+        files.add(workspaceRoot.resolve(".mvn/maven.config"));
+        files.add(workspaceRoot.resolve(".mvn/extensions.xml"));
+        files.add(mavenHome.resolve("settings.xml"));
+        return fingerprint(files);
+    }
+
+    private static String fingerprint(List<Path> files) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var file : files) {
+                digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                if (Files.exists(file)) {
+                    digest.update(Files.readAllBytes(file));
+                }
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<Path> pomFiles() {
+        return buildFiles(workspaceRoot, name -> name.equals("pom.xml"));
+    }
+
+    /** Find files under `root` whose names match `isBuildFile` */
+    private static List<Path> buildFiles(Path root, Predicate<String> isBuildFile) {
+        var found = new ArrayList<Path>();
+        try {
+            Files.walkFileTree(
+                    root,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            var name = dir.getFileName().toString();
+                            if (!dir.equals(root) && (name.startsWith(".") || SKIP_DIRS.contains(name))) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (isBuildFile.test(file.getFileName().toString())) {
+                                found.add(file);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // The order of a directory walk depends on the file system
+        Collections.sort(found);
+        return found;
+    }
+
+    /** Maven's build output and npm's dependencies, which don't contain the workspace's own build files */
+    private static final Set<String> SKIP_DIRS = Set.of("target", "node_modules");
+
     private Path findAnyJar(Artifact artifact, boolean source) {
         Path maven = findMavenJar(artifact, source);
 
@@ -146,27 +346,7 @@ class InferConfig {
     }
 
     private Path findGradleJar(Artifact artifact, boolean source) {
-        // Search for caches/modules-*/files-*/groupId/artifactId/version/*/artifactId-version[-sources].jar
-        var base = gradleHome.resolve("caches");
-        var pattern =
-                "glob:"
-                        + String.join(
-                                File.separator,
-                                base.toString(),
-                                "modules-*",
-                                "files-*",
-                                artifact.groupId,
-                                artifact.artifactId,
-                                artifact.version,
-                                "*",
-                                fileName(artifact, source));
-        var match = FileSystems.getDefault().getPathMatcher(pattern);
-
-        try {
-            return Files.walk(base, 7).filter(match::matches).findFirst().orElse(NOT_FOUND);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return GradleCache.find(gradleHome, artifact, fileName(artifact, source)).orElse(NOT_FOUND);
     }
 
     private String fileName(Artifact artifact, boolean source) {
@@ -175,11 +355,16 @@ class InferConfig {
 
     static Set<Path> mvnDependencies(Path pomXml, String goal) {
         Objects.requireNonNull(pomXml, "pom.xml path is null");
+        var mvn = getMvnCommand();
+        if (mvn == null) {
+            LOG.severe("Couldn't find mvn on PATH, can't infer the class path of " + pomXml);
+            return Set.of();
+        }
         try {
             // TODO consider using mvn valide dependency:copy-dependencies -DoutputDirectory=??? instead
             // Run maven as a subprocess
             String[] command = {
-                getMvnCommand(),
+                mvn,
                 "--batch-mode", // Turns off ANSI control sequences
                 "validate",
                 goal,
@@ -189,15 +374,25 @@ class InferConfig {
             var output = Files.createTempFile("java-language-server-maven-output", ".txt");
             LOG.info("Running " + String.join(" ", command) + " ...");
             var workingDirectory = pomXml.toAbsolutePath().getParent().toFile();
-            var process =
-                    new ProcessBuilder()
-                            .command(command)
-                            .directory(workingDirectory)
-                            .redirectError(ProcessBuilder.Redirect.INHERIT)
-                            .redirectOutput(output.toFile())
-                            .start();
+            var event = new Events.Subprocess();
+            event.begin();
+            Process process;
+            try {
+                process =
+                        new ProcessBuilder()
+                                .command(command)
+                                .directory(workingDirectory)
+                                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                                .redirectOutput(output.toFile())
+                                .start();
+            } catch (IOException e) {
+                // mvn is not installed
+                LOG.severe("Couldn't run `" + String.join(" ", command) + "`: " + e.getMessage());
+                return Set.of();
+            }
             // Wait for process to exit
             var result = process.waitFor();
+            commit(event, command, result, output);
             if (result != 0) {
                 LOG.severe("`" + String.join(" ", command) + "` returned " + result);
                 return Set.of();
@@ -251,50 +446,168 @@ class InferConfig {
         return null;
     }
 
-    private boolean buildProtos(Path bazelWorkspaceRoot) {
-        var targets = bazelQuery(bazelWorkspaceRoot, "java_proto_library");
-        if (targets.size() == 0) {
-            return false;
+    private Boolean cacheBuildProtos;
+
+    /** Build the java_proto_library targets, once, so aquery can see their outputs */
+    private synchronized boolean buildProtos(Path bazelWorkspaceRoot) {
+        if (cacheBuildProtos == null) {
+            var targets = bazelQuery(bazelWorkspaceRoot, "java_proto_library");
+            if (targets.size() != 0) {
+                bazelDryRunBuild(bazelWorkspaceRoot, targets);
+            }
+            cacheBuildProtos = targets.size() != 0;
         }
-        bazelDryRunBuild(bazelWorkspaceRoot, targets);
-        return true;
+        return cacheBuildProtos;
+    }
+
+    /**
+     * Bazel commands run on their own threads, so we can parse the output of one query while bazel answers the next.
+     * The bazel server runs one command at a time, and makes the others wait their turn.
+     */
+    private static final ExecutorService BAZEL =
+            Executors.newCachedThreadPool(
+                    task -> {
+                        var thread = new Thread(task, "bazel");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private static <T> CompletableFuture<T> async(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, BAZEL);
     }
 
     private Set<Path> bazelClasspath(Path bazelWorkspaceRoot) {
-        var absolute = new HashSet<Path>();
+        return cachedBazelPaths(bazelWorkspaceRoot, "classPath", () -> inferBazelClasspath(bazelWorkspaceRoot));
+    }
 
-        // Add protos
-        if (buildProtos(bazelWorkspaceRoot)) {
-            for (var relative : bazelAQuery(bazelWorkspaceRoot, "Javac", "--output", "proto_library")) {
-                absolute.add(bazelWorkspaceRoot.resolve(relative));
-            }
+    private Set<Path> inferBazelClasspath(Path bazelWorkspaceRoot) {
+        // Protos
+        var protos =
+                async(
+                        () -> {
+                            if (!buildProtos(bazelWorkspaceRoot)) return Set.<String>of();
+                            return bazelAQuery(bazelWorkspaceRoot, "Javac", "--output", "proto_library");
+                        });
+        // Rest of classpath
+        var java =
+                async(
+                        () ->
+                                bazelAQuery(
+                                        bazelWorkspaceRoot,
+                                        "Javac",
+                                        "--classpath",
+                                        "java_library",
+                                        "java_test",
+                                        "java_binary"));
+        var absolute = new HashSet<Path>();
+        for (var relative : protos.join()) {
+            absolute.add(bazelWorkspaceRoot.resolve(relative));
         }
-
-        // Add rest of classpath
-        for (var relative :
-                bazelAQuery(bazelWorkspaceRoot, "Javac", "--classpath", "java_library", "java_test", "java_binary")) {
+        for (var relative : java.join()) {
             absolute.add(bazelWorkspaceRoot.resolve(relative));
         }
         return absolute;
     }
 
     private Set<Path> bazelSourcepath(Path bazelWorkspaceRoot) {
+        return cachedBazelPaths(bazelWorkspaceRoot, "docPath", () -> inferBazelSourcepath(bazelWorkspaceRoot));
+    }
+
+    private Set<Path> inferBazelSourcepath(Path bazelWorkspaceRoot) {
+        var outputBase = async(() -> bazelOutputBase(bazelWorkspaceRoot));
+        var java =
+                async(
+                        () ->
+                                bazelAQuery(
+                                        bazelWorkspaceRoot,
+                                        "JavaSourceJar",
+                                        "--sources",
+                                        "java_library",
+                                        "java_test",
+                                        "java_binary"));
+        // Proto source files
+        var protos =
+                async(
+                        () -> {
+                            if (!buildProtos(bazelWorkspaceRoot)) return Set.<String>of();
+                            return bazelAQuery(bazelWorkspaceRoot, "Javac", "--source_jars", "proto_library");
+                        });
         var absolute = new HashSet<Path>();
-        var outputBase = bazelOutputBase(bazelWorkspaceRoot);
-        for (var relative :
-                bazelAQuery(
-                        bazelWorkspaceRoot, "JavaSourceJar", "--sources", "java_library", "java_test", "java_binary")) {
-            absolute.add(outputBase.resolve(relative));
+        for (var relative : java.join()) {
+            absolute.add(outputBase.join().resolve(relative));
+        }
+        for (var relative : protos.join()) {
+            absolute.add(bazelWorkspaceRoot.resolve(relative));
         }
+        return absolute;
+    }
+
+    /** BazelPaths is what bazel reported for a workspace, along with the fingerprint of the build files it read */
+    private static class BazelPaths {
+        String fingerprint;
+        List<String> paths = List.of();
+    }
 
-        // Add proto source files
-        if (buildProtos(bazelWorkspaceRoot)) {
-            for (var relative : bazelAQuery(bazelWorkspaceRoot, "Javac", "--source_jars", "proto_library")) {
-                absolute.add(bazelWorkspaceRoot.resolve(relative));
+    private static final String BAZEL_PATHS_CACHE = "bazel-paths.json";
+
+    private static Map<String, BazelPaths> readBazelPaths() {
+        var type = new TypeToken<Map<String, BazelPaths>>() {}.getType();
+        return DiskCache.<Map<String, BazelPaths>>read(BAZEL_PATHS_CACHE, type).orElse(Map.of());
+    }
+
+    /**
+     * Run `infer` only if the bazel build files have changed since the last time we asked for `kind`, or if some of the
+     * paths bazel reported are gone, for example after `bazel clean`
+     */
+    Set<Path> cachedBazelPaths(Path bazelWorkspaceRoot, String kind, Supplier<Set<Path>> infer) {
+        var key = bazelWorkspaceRoot.toAbsolutePath().normalize() + "#" + kind;
+        var fingerprint = bazelFingerprint(bazelWorkspaceRoot);
+        var cached = readBazelPaths().get(key);
+        if (cached != null && cached.fingerprint.equals(fingerprint) && allExist(cached.paths)) {
+            LOG.info("Using the cached " + kind + " of " + bazelWorkspaceRoot);
+            return paths(cached.paths);
+        }
+        var result = infer.get();
+        // An empty result usually means bazel failed, so try again next time
+        if (!result.isEmpty()) {
+            var paths = new BazelPaths();
+            paths.fingerprint = fingerprint;
+            paths.paths = strings(result);
+            saveBazelPaths(key, paths);
+        }
+        return result;
+    }
+
+    private static boolean allExist(List<String> paths) {
+        for (var p : paths) {
+            if (!Files.exists(Paths.get(p))) {
+                LOG.info("Ignoring cached bazel paths because " + p + " no longer exists");
+                return false;
             }
         }
+        return true;
+    }
 
-        return absolute;
+    private static synchronized void saveBazelPaths(String key, BazelPaths paths) {
+        var all = new HashMap<>(readBazelPaths());
+        all.put(key, paths);
+        // Forget workspaces that have been deleted, so the cache doesn't grow forever
+        all.keySet().removeIf(k -> !Files.exists(Paths.get(k.substring(0, k.lastIndexOf('#')), "WORKSPACE")));
+        DiskCache.write(BAZEL_PATHS_CACHE, all);
+    }
+
+    private static final Set<String> BAZEL_FILES =
+            Set.of("WORKSPACE", "WORKSPACE.bazel", "MODULE.bazel", "BUILD", "BUILD.bazel");
+
+    /**
+     * Hash everything that can change what bazel reports: every BUILD file and .bzl extension in the workspace, the
+     * WORKSPACE file, and the workspace's .bazelrc and .bazelversion
+     */
+    String bazelFingerprint(Path bazelWorkspaceRoot) {
+        var files = buildFiles(bazelWorkspaceRoot, name -> BAZEL_FILES.contains(name) || name.endsWith(".bzl"));
+        files.add(bazelWorkspaceRoot.resolve(".bazelrc"));
+        files.add(bazelWorkspaceRoot.resolve(".bazelversion"));
+        return fingerprint(files);
     }
 
     private Path bazelOutputBase(Path bazelWorkspaceRoot) {
@@ -376,108 +689,15 @@ class InferConfig {
         if (output == NOT_FOUND) {
             return Set.of();
         }
-        return readActionGraph(output, filterArgument);
-    }
-
-    private Set<String> readActionGraph(Path output, String filterArgument) {
-        try {
-            var containerV2 = AnalysisProtosV2.ActionGraphContainer.parseFrom(Files.newInputStream(output));
-            if (containerV2.getArtifactsCount() != 0 && containerV2.getArtifactsList().get(0).getId() != 0) {
-                return readActionGraphFromV2(containerV2, filterArgument);
-            }
-            var containerV1 = AnalysisProtos.ActionGraphContainer.parseFrom(Files.newInputStream(output));
-            return readActionGraphFromV1(containerV1, filterArgument);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private Set<String> readActionGraphFromV1(AnalysisProtos.ActionGraphContainer container, String filterArgument) {
-        var argumentPaths = new HashSet<String>();
-        var outputIds = new HashSet<String>();
-        for (var action : container.getActionsList()) {
-            var isFilterArgument = false;
-            for (var argument : action.getArgumentsList()) {
-                if (isFilterArgument && argument.startsWith("-")) {
-                    isFilterArgument = false;
-                    continue;
-                }
-                if (!isFilterArgument) {
-                    isFilterArgument = argument.equals(filterArgument);
-                    continue;
-                }
-                argumentPaths.add(argument);
-            }
-            outputIds.addAll(action.getOutputIdsList());
-        }
-        var artifactPaths = new HashSet<String>();
-        for (var artifact : container.getArtifactsList()) {
-            if (!argumentPaths.contains(artifact.getExecPath())) {
-                // artifact was not specified by --filterArgument
-                continue;
-            }
-            if (outputIds.contains(artifact.getId()) && !filterArgument.equals("--output")) {
-                // artifact is the output of another java action
-                continue;
-            }
-            var relative = artifact.getExecPath();
-            LOG.info("...found bazel dependency " + relative);
-            artifactPaths.add(relative);
-        }
-        return artifactPaths;
-    }
-
-    private Set<String> readActionGraphFromV2(AnalysisProtosV2.ActionGraphContainer container, String filterArgument) {
-        var argumentPaths = new HashSet<String>();
-        var outputIds = new HashSet<Integer>();
-        for (var action : container.getActionsList()) {
-            var isFilterArgument = false;
-            for (var argument : action.getArgumentsList()) {
-                if (isFilterArgument && argument.startsWith("-")) {
-                    isFilterArgument = false;
-                    continue;
-                }
-                if (!isFilterArgument) {
-                    isFilterArgument = argument.equals(filterArgument);
-                    continue;
-                }
-                argumentPaths.add(argument);
-            }
-            outputIds.addAll(action.getOutputIdsList());
-        }
-        var artifactPaths = new HashSet<String>();
-        for (var artifact : container.getArtifactsList()) {
-            if (outputIds.contains(artifact.getId()) && !filterArgument.equals("--output")) {
-                // artifact is the output of another java action
-                continue;
-            }
-            var relative = buildPath(container.getPathFragmentsList(), artifact.getPathFragmentId());
-            if (!argumentPaths.contains(relative)) {
-                // artifact was not specified by --filterArgument
-                continue;
-            }
-            LOG.info("...found bazel dependency " + relative);
-            artifactPaths.add(relative);
-        }
-        return artifactPaths;
-    }
-
-    private static String buildPath(List<PathFragment> fragments, int id) {
-        for (PathFragment fragment : fragments) {
-            if (fragment.getId() == id) {
-                if (fragment.getParentId() != 0) {
-                    return buildPath(fragments, fragment.getParentId()) + "/" + fragment.getLabel();
-                }
-                return fragment.getLabel();
-            }
-        }
-        throw new RuntimeException();
+        return ActionGraph.read(output, filterArgument);
     }
 
     private static Path fork(Path workspaceRoot, String[] command) {
         try {
             LOG.info("Running " + String.join(" ", command) + " ...");
             var output = Files.createTempFile("java-language-server-bazel-output", ".proto");
+            var event = new Events.Subprocess();
+            event.begin();
             var process =
                     new ProcessBuilder()
                             .command(command)
@@ -487,6 +707,7 @@ class InferConfig {
                             .start();
             // Wait for process to exit
             var result = process.waitFor();
+            commit(event, command, result, output);
             if (result != 0) {
                 LOG.severe("`" + String.join(" ", command) + "` returned " + result);
                 return NOT_FOUND;
@@ -497,5 +718,15 @@ class InferConfig {
         }
     }
 
+    private static void commit(Events.Subprocess event, String[] command, int exitCode, Path output)
+            throws IOException {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.command = String.join(" ", command);
+        event.exitCode = exitCode;
+        event.outputBytes = Files.size(output);
+        event.commit();
+    }
+
     private static final Path NOT_FOUND = Paths.get("");
 }
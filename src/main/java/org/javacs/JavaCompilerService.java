@@ -2,11 +2,13 @@ package org.javacs;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.time.Instant;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import javax.tools.*;
+import org.javacs.completion.PruneMethodBodies;
 
 class JavaCompilerService implements CompilerProvider {
     // Not modifiable! If you want to edit these, you need to create a new instance
@@ -14,7 +16,10 @@ class JavaCompilerService implements CompilerProvider {
     final Set<String> addExports;
     final ReusableCompiler compiler = new ReusableCompiler();
     final Docs docs;
-    final Set<String> jdkClasses = ScanClassPath.jdkTopLevelClasses(), classPathClasses;
+    /** Top-level classes in the JDK and on the class path */
+    final ClassNameIndex classPathClasses;
+    /** The size and modified time of each jar on the class path when classPathClasses was built */
+    private final Map<Path, String> classPathStamps;
     // Diagnostics from the last compilation task
     final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
     // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
@@ -35,12 +40,105 @@ class JavaCompilerService implements CompilerProvider {
         this.docPath = Collections.unmodifiableSet(docPath);
         this.addExports = Collections.unmodifiableSet(addExports);
         this.docs = new Docs(docPath);
-        this.classPathClasses = ScanClassPath.classPathTopLevelClasses(classPath);
+        this.classPathStamps = stamps(classPath);
+        this.classPathClasses = indexClassPath(classPath);
         this.fileManager = new SourceFileManager();
     }
 
+    /** A jar that is rebuilt in place keeps its path, so we also compare its size and modified time */
+    private static Map<Path, String> stamps(Set<Path> classPath) {
+        var stamps = new HashMap<Path, String>();
+        for (var jar : classPath) {
+            if (!Files.isRegularFile(jar)) continue;
+            try {
+                stamps.put(jar, Files.size(jar) + ":" + Files.getLastModifiedTime(jar).toMillis());
+            } catch (IOException e) {
+                LOG.warning("Couldn't read " + jar + ": " + e.getMessage());
+            }
+        }
+        return stamps;
+    }
+
+    private static ClassNameIndex indexClassPath(Set<Path> classPath) {
+        var classes = new HashSet<String>();
+        classes.addAll(ScanClassPath.jdkTopLevelClasses());
+        classes.addAll(ScanClassPath.classPathTopLevelClasses(classPath));
+        return new ClassNameIndex(classes);
+    }
+
+    /**
+     * A compiler for a new configuration. If nothing has changed, this is the same compiler, with its javac context
+     * still warm. Otherwise the new compiler reuses whatever the change didn't touch: the docs if the doc path is the
+     * same, the class path index if the class path and its jars are the same, and the caches of the workspace.
+     */
+    JavaCompilerService reconfigure(Set<Path> classPath, Set<Path> docPath, Set<String> addExports) {
+        var stamps = stamps(classPath);
+        if (classPath.equals(this.classPath)
+                && stamps.equals(this.classPathStamps)
+                && docPath.equals(this.docPath)
+                && addExports.equals(this.addExports)) {
+            LOG.info("Configuration is unchanged, keeping the compiler");
+            return this;
+        }
+        return new JavaCompilerService(this, classPath, stamps, docPath, addExports);
+    }
+
+    private JavaCompilerService(
+            JavaCompilerService previous,
+            Set<Path> classPath,
+            Map<Path, String> stamps,
+            Set<Path> docPath,
+            Set<String> addExports) {
+        logChanges("Class path", previous.classPath, classPath);
+        logChanges("Doc path", previous.docPath, docPath);
+        logChanges("Exports", previous.addExports, addExports);
+        this.classPath = Collections.unmodifiableSet(classPath);
+        this.docPath = Collections.unmodifiableSet(docPath);
+        this.addExports = Collections.unmodifiableSet(addExports);
+        this.docs = docPath.equals(previous.docPath) ? previous.docs : new Docs(docPath);
+        this.classPathStamps = stamps;
+        for (var jar : stamps.keySet()) {
+            var before = previous.classPathStamps.get(jar);
+            if (before != null && !before.equals(stamps.get(jar))) LOG.info("Class path ~ " + jar);
+        }
+        var sameJars = classPath.equals(previous.classPath) && stamps.equals(previous.classPathStamps);
+        this.classPathClasses = sameJars ? previous.classPathClasses : indexClassPath(classPath);
+        // The javac context and file manager are new, because requests may still be using the previous ones
+        this.fileManager = new SourceFileManager();
+        this.cacheFileImports = previous.cacheFileImports;
+        this.cacheWorkspaceClasses = previous.cacheWorkspaceClasses;
+        this.cacheWorkspaceVersion = previous.cacheWorkspaceVersion;
+    }
+
+    private static <T> void logChanges(String name, Set<T> before, Set<T> after) {
+        for (var p : after) {
+            if (!before.contains(p)) LOG.info(name + " + " + p);
+        }
+        for (var p : before) {
+            if (!after.contains(p)) LOG.info(name + " - " + p);
+        }
+    }
+
+    /** Share the configuration and indexes of `parent`, but not its javac context */
+    private JavaCompilerService(JavaCompilerService parent) {
+        this.classPath = parent.classPath;
+        this.docPath = parent.docPath;
+        this.addExports = parent.addExports;
+        this.docs = parent.docs;
+        this.classPathClasses = parent.classPathClasses;
+        this.classPathStamps = parent.classPathStamps;
+        this.fileManager = new SourceFileManager();
+    }
+
+    /** Create a compiler with its own javac context, which can compile on another thread while this one is in use */
+    JavaCompilerService fork() {
+        return new JavaCompilerService(this);
+    }
+
     private CompileBatch cachedCompile;
     private Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    /** The text of in-memory sources, which can share a path and a modified time but not contents */
+    private Map<JavaFileObject, String> cachedContents = new HashMap<>();
 
     private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
         if (cachedModified.size() != sources.size()) {
@@ -53,6 +151,9 @@ class JavaCompilerService implements CompilerProvider {
             if (f.getLastModified() != cachedModified.get(f)) {
                 return true;
             }
+            if (!Objects.equals(contents(f), cachedContents.get(f))) {
+                return true;
+            }
         }
         return false;
     }
@@ -66,9 +167,18 @@ class JavaCompilerService implements CompilerProvider {
         }
         cachedCompile = doCompile(sources);
         cachedModified.clear();
+        cachedContents.clear();
         for (var f : sources) {
             cachedModified.put(f, f.getLastModified());
+            cachedContents.put(f, contents(f));
+        }
+    }
+
+    private static String contents(JavaFileObject file) {
+        if (file instanceof SourceFileObject) {
+            return ((SourceFileObject) file).contents;
         }
+        return null;
     }
 
     private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
@@ -182,22 +292,59 @@ class JavaCompilerService implements CompilerProvider {
         return all;
     }
 
-    @Override
-    public List<String> publicTopLevelTypes() {
-        var all = new ArrayList<String>();
-        for (var file : FileStore.all()) {
-            var fileName = file.getFileName().toString();
-            if (!fileName.endsWith(".java")) continue;
-            var className = fileName.substring(0, fileName.length() - ".java".length());
-            var packageName = FileStore.packageName(file);
-            if (!packageName.isEmpty()) {
-                className = packageName + "." + className;
+    private ClassNameIndex cacheWorkspaceClasses = ClassNameIndex.EMPTY;
+    private long cacheWorkspaceVersion = -1;
+
+    /** Top-level classes in the workspace, re-indexed only when files are added, removed or moved */
+    private ClassNameIndex workspaceClasses() {
+        if (cacheWorkspaceVersion != FileStore.version()) {
+            var all = new ArrayList<String>();
+            for (var file : FileStore.all()) {
+                var fileName = file.getFileName().toString();
+                if (!fileName.endsWith(".java")) continue;
+                var className = fileName.substring(0, fileName.length() - ".java".length());
+                var packageName = FileStore.packageName(file);
+                if (!packageName.isEmpty()) {
+                    className = packageName + "." + className;
+                }
+                all.add(className);
             }
-            all.add(className);
+            cacheWorkspaceClasses = new ClassNameIndex(all);
+            cacheWorkspaceVersion = FileStore.version();
         }
-        all.addAll(classPathClasses);
-        all.addAll(jdkClasses);
-        return all;
+        return cacheWorkspaceClasses;
+    }
+
+    @Override
+    public List<String> publicTopLevelTypes(String partialName, int limit) {
+        var all = new LinkedHashSet<String>();
+        all.addAll(workspaceClasses().named(partialName, limit));
+        all.addAll(classPathClasses.named(partialName, limit));
+        return limit(all, limit);
+    }
+
+    @Override
+    public List<String> publicTopLevelTypes(String packageName, String partialName, int limit) {
+        var all = new LinkedHashSet<String>();
+        all.addAll(workspaceClasses().inPackage(packageName, partialName, limit));
+        all.addAll(classPathClasses.inPackage(packageName, partialName, limit));
+        return limit(all, limit);
+    }
+
+    @Override
+    public List<String> packageNames(String prefix) {
+        var all = new TreeSet<String>();
+        all.addAll(workspaceClasses().packages(prefix));
+        all.addAll(classPathClasses.packages(prefix));
+        return new ArrayList<>(all);
+    }
+
+    private List<String> limit(Collection<String> classNames, int limit) {
+        var list = new ArrayList<String>(classNames);
+        if (list.size() > limit) {
+            return list.subList(0, limit);
+        }
+        return list;
     }
 
     @Override
@@ -223,14 +370,10 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Optional<JavaFileObject> findAnywhere(String className) {
-        var fromDocs = findPublicTypeDeclarationInDocPath(className);
+        var fromDocs = docs.find(className);
         if (fromDocs.isPresent()) {
             return fromDocs;
         }
-        var fromJdk = findPublicTypeDeclarationInJdk(className);
-        if (fromJdk.isPresent()) {
-            return fromJdk;
-        }
         var fromSource = findTypeDeclaration(className);
         if (fromSource != NOT_FOUND) {
             return Optional.of(new SourceFileObject(fromSource));
@@ -238,35 +381,6 @@ class JavaCompilerService implements CompilerProvider {
         return Optional.empty();
     }
 
-    private Optional<JavaFileObject> findPublicTypeDeclarationInDocPath(String className) {
-        try {
-            var found =
-                    docs.fileManager.getJavaFileForInput(
-                            StandardLocation.SOURCE_PATH, className, JavaFileObject.Kind.SOURCE);
-            return Optional.ofNullable(found);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private Optional<JavaFileObject> findPublicTypeDeclarationInJdk(String className) {
-        try {
-            for (var module : ScanClassPath.JDK_MODULES) {
-                var moduleLocation = docs.fileManager.getLocationForModule(StandardLocation.MODULE_SOURCE_PATH, module);
-                if (moduleLocation == null) continue;
-                var fromModuleSourcePath =
-                        docs.fileManager.getJavaFileForInput(moduleLocation, className, JavaFileObject.Kind.SOURCE);
-                if (fromModuleSourcePath != null) {
-                    LOG.info(String.format("...found %s in module %s of jdk", fromModuleSourcePath.toUri(), module));
-                    return Optional.of(fromModuleSourcePath);
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return Optional.empty();
-    }
-
     @Override
     public Path findTypeDeclaration(String className) {
         var fastFind = findPublicTypeDeclaration(className);
@@ -350,5 +464,32 @@ class JavaCompilerService implements CompilerProvider {
         return new CompileTask(compile.task, compile.roots, diags, compile::close);
     }
 
+    private SourceFileObject cachedPruned;
+    private long cachedPrunedModified = -1, cachedPrunedStart, cachedPrunedEnd;
+
+    @Override
+    public CompileTask compilePruned(Path file, int line, int column) {
+        var parse = parse(file);
+        var cursor = parse.root.getLineMap().getPosition(line, column);
+        var prune = new PruneMethodBodies(parse.task);
+        var contents = prune.scan(parse.root, cursor);
+        // Re-use the same source object while the cursor stays in the same method, so compileBatch can re-use the last
+        // compilation
+        var modified = FileStore.modified(file).toEpochMilli();
+        var samePrune =
+                cachedPruned != null
+                        && cachedPruned.path.equals(file)
+                        && cachedPrunedModified == modified
+                        && cachedPrunedStart == prune.liveBodyStart
+                        && cachedPrunedEnd == prune.liveBodyEnd;
+        if (!samePrune) {
+            cachedPruned = new SourceFileObject(file, contents.toString(), Instant.now());
+            cachedPrunedModified = modified;
+            cachedPrunedStart = prune.liveBodyStart;
+            cachedPrunedEnd = prune.liveBodyEnd;
+        }
+        return compile(List.of(cachedPruned));
+    }
+
     private static final Logger LOG = Logger.getLogger("main");
 }
@@ -9,6 +9,9 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.lang.model.element.*;
 import org.javacs.action.CodeActionProvider;
@@ -33,8 +36,10 @@ class JavaLanguageServer extends LanguageServer {
     private JsonObject cacheSettings;
     private JsonObject settings = new JsonObject();
     private boolean modifiedBuild = true;
+    /** There is only one javac context, so requests that compile take turns, even on different workers */
+    private final Object compileLock = new Object();
 
-    JavaCompilerService compiler() {
+    synchronized JavaCompilerService compiler() {
         if (needsCompiler()) {
             cacheCompiler = createCompiler();
             cacheSettings = settings;
@@ -56,15 +61,74 @@ class JavaLanguageServer extends LanguageServer {
 
     void lint(Collection<Path> files) {
         if (files.isEmpty()) return;
+        lint(compiler(), versions(files));
+    }
+
+    /** Lints run on their own thread, with their own javac context, so they don't hold up other requests */
+    private final ExecutorService lintExecutor =
+            Executors.newSingleThreadExecutor(
+                    task -> {
+                        var thread = new Thread(task, "lint");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private JavaCompilerService cacheLintCompiler, cacheLintCompilerParent;
+
+    private void lintInBackground(Collection<Path> files) {
+        if (files.isEmpty()) return;
+        var compiler = compiler();
+        if (cacheLintCompilerParent != compiler) {
+            cacheLintCompiler = compiler.fork();
+            cacheLintCompilerParent = compiler;
+        }
+        var linter = cacheLintCompiler;
+        var versions = versions(files);
+        lintExecutor.execute(
+                () -> {
+                    try {
+                        lint(linter, versions);
+                    } catch (Exception e) {
+                        LOG.log(Level.SEVERE, e.getMessage(), e);
+                    }
+                });
+    }
+
+    /** The version of each file we're about to lint, so we don't publish diagnostics for an outdated version */
+    private Map<Path, Instant> versions(Collection<Path> files) {
+        var versions = new HashMap<Path, Instant>();
+        for (var f : files) {
+            versions.put(f, FileStore.modified(f));
+        }
+        return versions;
+    }
+
+    private boolean isCurrent(Path file, Map<Path, Instant> versions) {
+        var version = versions.get(file);
+        return version != null && version.equals(FileStore.modified(file));
+    }
+
+    private void lint(JavaCompilerService compiler, Map<Path, Instant> versions) {
+        var files = new ArrayList<Path>();
+        for (var f : versions.keySet()) {
+            if (isCurrent(f, versions)) files.add(f);
+        }
+        if (files.isEmpty()) {
+            LOG.info("Skip lint of " + versions.size() + " files, which have been edited since it was requested");
+            return;
+        }
         LOG.info("Lint " + files.size() + " files...");
         var started = Instant.now();
-        try (var task = compiler().compile(files.toArray(Path[]::new))) {
+        try (var task = compiler.compile(files.toArray(Path[]::new))) {
             var compiled = Instant.now();
             LOG.info("...compiled in " + Duration.between(started, compiled).toMillis() + " ms");
+            // If a file was edited while we were compiling, a newer lint is coming, so don't publish stale results
             for (var errs : new ErrorProvider(task).errors()) {
+                if (!isCurrent(Paths.get(errs.uri), versions)) continue;
                 client.publishDiagnostics(errs);
             }
             for (var colors : new ColorProvider(task).colors()) {
+                if (!isCurrent(Paths.get(colors.uri), versions)) continue;
                 client.customNotification("java/colors", GSON.toJsonTree(colors));
             }
             var published = Instant.now();
@@ -96,11 +160,16 @@ class JavaLanguageServer extends LanguageServer {
         // If classpath is specified by the user, don't infer anything
         if (!classPath.isEmpty()) {
             javaEndProgress();
-            return new JavaCompilerService(classPath, docPath(), addExports);
+            return configure(classPath, docPath(), addExports);
         }
         // Otherwise, combine inference with user-specified external dependencies
         else {
             var infer = new InferConfig(workspaceRoot, externalDependencies);
+            if (infer.isMaven()) {
+                var config = mavenConfig(infer);
+                javaEndProgress();
+                return configure(config.classPath(), config.docPath(), addExports);
+            }
 
             javaReportProgress(new JavaReportProgressParams("Inferring class path"));
             classPath = infer.classPath();
@@ -109,8 +178,81 @@ class JavaLanguageServer extends LanguageServer {
             var docPath = infer.buildDocPath();
 
             javaEndProgress();
+            return configure(classPath, docPath, addExports);
+        }
+    }
+
+    /** Reuse as much of the current compiler as the new configuration allows */
+    private JavaCompilerService configure(Set<Path> classPath, Set<Path> docPath, Set<String> addExports) {
+        if (cacheCompiler == null) {
             return new JavaCompilerService(classPath, docPath, addExports);
         }
+        return cacheCompiler.reconfigure(classPath, docPath, addExports);
+    }
+
+    /**
+     * Maven takes a long time, so use what it reported last time, even if a pom.xml has changed since. If it has, ask
+     * maven again in the background, and re-create the compiler when it answers.
+     */
+    private InferConfig.MavenConfig mavenConfig(InferConfig infer) {
+        var cached = infer.cachedMavenConfig();
+        if (cached.isEmpty()) {
+            javaReportProgress(new JavaReportProgressParams("Inferring class path"));
+            var config = infer.inferMavenConfig();
+            inferExecutor.execute(() -> downloadSources(infer, config));
+            return config;
+        }
+        if (cached.get().fingerprint.equals(infer.mavenFingerprint())) {
+            LOG.info("Using cached class path, because the build files haven't changed");
+        } else {
+            LOG.info("Using cached class path, and refreshing it in the background because the build files changed");
+            refreshMavenConfig(infer);
+        }
+        return cached.get();
+    }
+
+    private final ExecutorService inferExecutor =
+            Executors.newSingleThreadExecutor(
+                    task -> {
+                        var thread = new Thread(task, "infer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private void refreshMavenConfig(InferConfig infer) {
+        inferExecutor.execute(
+                () -> {
+                    try {
+                        // An earlier refresh may have already caught up with the build files
+                        var cached = infer.cachedMavenConfig();
+                        if (cached.isPresent() && cached.get().fingerprint.equals(infer.mavenFingerprint())) return;
+                        var config = infer.inferMavenConfig();
+                        if (config.classPath.isEmpty()) {
+                            LOG.warning("Keeping the cached class path because maven didn't report one");
+                            return;
+                        }
+                        synchronized (this) {
+                            LOG.info("Compiler needs to be re-created because maven reported a new class path");
+                            modifiedBuild = true;
+                        }
+                        downloadSources(infer, config);
+                    } catch (Exception e) {
+                        LOG.log(Level.SEVERE, e.getMessage(), e);
+                    }
+                });
+    }
+
+    /** Runs on inferExecutor, because maven may have to download the source jars */
+    private void downloadSources(InferConfig infer, InferConfig.MavenConfig config) {
+        try {
+            if (!infer.isMissingSources() || !infer.downloadSources(config)) return;
+            synchronized (this) {
+                LOG.info("Compiler needs to be re-created because maven downloaded more source jars");
+                modifiedBuild = true;
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+        }
     }
 
     private Set<String> externalDependencies() {
@@ -212,8 +354,20 @@ class JavaLanguageServer extends LanguageServer {
     @Override
     public void shutdown() {}
 
+    /** Compile at most this many files at once, so memory doesn't grow with the size of the workspace */
+    private static final int BATCH_SIZE = 100;
+
+    /** How many files find references and rename compile at once */
+    private final int batchSize;
+
     public JavaLanguageServer(LanguageClient client) {
+        this(client, BATCH_SIZE);
+    }
+
+    /** Tests use a small batchSize to search and rename in several batches */
+    JavaLanguageServer(LanguageClient client, int batchSize) {
         this.client = client;
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -258,70 +412,153 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public Optional<CompletionList> completion(TextDocumentPositionParams params) {
-        if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
-        var file = Paths.get(params.textDocument.uri);
-        var provider = new CompletionProvider(compiler());
-        var list = provider.complete(file, params.position.line + 1, params.position.character + 1);
-        if (list == CompletionProvider.NOT_SUPPORTED) return Optional.empty();
-        return Optional.of(list);
+        synchronized (compileLock) {
+            if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
+            var file = Paths.get(params.textDocument.uri);
+            var provider = new CompletionProvider(compiler());
+            var list = provider.complete(file, params.position.line + 1, params.position.character + 1);
+            if (list == CompletionProvider.NOT_SUPPORTED) return Optional.empty();
+            prefetchDocs = topItems(list.items);
+            return Optional.of(list);
+        }
+    }
+
+    private static final int PREFETCH_DOCS = 20;
+    private volatile List<CompletionItem> prefetchDocs = List.of();
+
+    /** The items the client is likely to show first, which are the ones it will resolve first */
+    private List<CompletionItem> topItems(List<CompletionItem> items) {
+        var sorted = new ArrayList<CompletionItem>(items);
+        sorted.sort(Comparator.comparing(i -> i.sortText != null ? i.sortText : i.label));
+        return sorted.subList(0, Math.min(PREFETCH_DOCS, sorted.size()));
     }
 
     @Override
     public CompletionItem resolveCompletionItem(CompletionItem unresolved) {
-        new HoverProvider(compiler()).resolveCompletionItem(unresolved);
-        return unresolved;
+        synchronized (compileLock) {
+            new HoverProvider(compiler()).resolveCompletionItem(unresolved);
+            return unresolved;
+        }
     }
 
     @Override
     public Optional<Hover> hover(TextDocumentPositionParams position) {
-        var uri = position.textDocument.uri;
-        var line = position.position.line + 1;
-        var column = position.position.character + 1;
-        if (!FileStore.isJavaFile(uri)) return Optional.empty();
-        var file = Paths.get(uri);
-        var list = new HoverProvider(compiler()).hover(file, line, column);
-        if (list == HoverProvider.NOT_SUPPORTED) {
-            return Optional.empty();
+        synchronized (compileLock) {
+            var uri = position.textDocument.uri;
+            var line = position.position.line + 1;
+            var column = position.position.character + 1;
+            if (!FileStore.isJavaFile(uri)) return Optional.empty();
+            var file = Paths.get(uri);
+            var list = new HoverProvider(compiler()).hover(file, line, column);
+            if (list == HoverProvider.NOT_SUPPORTED) {
+                return Optional.empty();
+            }
+            // TODO add range
+            return Optional.of(new Hover(list));
         }
-        // TODO add range
-        return Optional.of(new Hover(list));
     }
 
     @Override
     public Optional<SignatureHelp> signatureHelp(TextDocumentPositionParams params) {
-        if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
-        var file = Paths.get(params.textDocument.uri);
-        var line = params.position.line + 1;
-        var column = params.position.character + 1;
-        var help = new SignatureProvider(compiler()).signatureHelp(file, line, column);
-        if (help == SignatureProvider.NOT_SUPPORTED) return Optional.empty();
-        return Optional.of(help);
+        synchronized (compileLock) {
+            if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
+            var file = Paths.get(params.textDocument.uri);
+            var line = params.position.line + 1;
+            var column = params.position.character + 1;
+            var help = new SignatureProvider(compiler()).signatureHelp(file, line, column);
+            if (help == SignatureProvider.NOT_SUPPORTED) return Optional.empty();
+            return Optional.of(help);
+        }
     }
 
     @Override
     public Optional<List<Location>> gotoDefinition(TextDocumentPositionParams position) {
-        if (!FileStore.isJavaFile(position.textDocument.uri)) return Optional.empty();
-        var file = Paths.get(position.textDocument.uri);
-        var line = position.position.line + 1;
-        var column = position.position.character + 1;
-        var found = new DefinitionProvider(compiler(), file, line, column).find();
-        if (found == DefinitionProvider.NOT_SUPPORTED) {
-            return Optional.empty();
+        synchronized (compileLock) {
+            if (!FileStore.isJavaFile(position.textDocument.uri)) return Optional.empty();
+            var file = Paths.get(position.textDocument.uri);
+            var line = position.position.line + 1;
+            var column = position.position.character + 1;
+            var found = new DefinitionProvider(compiler(), file, line, column).find();
+            if (found == DefinitionProvider.NOT_SUPPORTED) {
+                return Optional.empty();
+            }
+            return Optional.of(found);
         }
-        return Optional.of(found);
     }
 
     @Override
     public Optional<List<Location>> findReferences(ReferenceParams position) {
-        if (!FileStore.isJavaFile(position.textDocument.uri)) return Optional.empty();
-        var file = Paths.get(position.textDocument.uri);
-        var line = position.position.line + 1;
-        var column = position.position.character + 1;
-        var found = new ReferenceProvider(compiler(), file, line, column).find();
-        if (found == ReferenceProvider.NOT_SUPPORTED) {
-            return Optional.empty();
+        synchronized (compileLock) {
+            if (!FileStore.isJavaFile(position.textDocument.uri)) return Optional.empty();
+            var file = Paths.get(position.textDocument.uri);
+            var line = position.position.line + 1;
+            var column = position.position.character + 1;
+            var progress = new ReferenceProgress(position.partialResultToken);
+            List<Location> found;
+            try {
+                found = new ReferenceProvider(compiler(), file, line, column, batchSize, progress).find();
+            } finally {
+                progress.end();
+            }
+            if (found == ReferenceProvider.NOT_SUPPORTED) {
+                return Optional.empty();
+            }
+            // If we already streamed the results, the final response must be empty
+            if (progress.streamed) {
+                return Optional.of(List.of());
+            }
+            return Optional.of(found);
+        }
+    }
+
+    /** Shows progress of a search across the workspace, if it takes more than one batch of files */
+    private class BatchProgress {
+        final String title;
+        boolean started;
+        int reportedFiles;
+
+        BatchProgress(String title) {
+            this.title = title;
+        }
+
+        void report(int doneFiles, int totalFiles) {
+            if (!started) {
+                if (doneFiles == totalFiles) return;
+                javaStartProgress(new JavaStartProgressParams(title));
+                started = true;
+            }
+            var percent = 100 * (doneFiles - reportedFiles) / totalFiles;
+            reportedFiles = doneFiles;
+            var message = String.format("%d/%d files", doneFiles, totalFiles);
+            javaReportProgress(new JavaReportProgressParams(message, percent));
+        }
+
+        void end() {
+            if (started) {
+                javaEndProgress();
+            }
+        }
+    }
+
+    /** Streams partial results of find-references, if the client asks for them */
+    private class ReferenceProgress extends BatchProgress implements ReferenceProvider.Progress {
+        final JsonElement partialResultToken;
+        boolean streamed;
+
+        ReferenceProgress(JsonElement partialResultToken) {
+            super("Find references");
+            this.partialResultToken = partialResultToken;
+        }
+
+        @Override
+        public void batch(List<Location> found, int doneFiles, int totalFiles) {
+            if (partialResultToken != null) {
+                var partial = new ProgressParams(partialResultToken, GSON.toJsonTree(found));
+                client.customNotification("$/progress", GSON.toJsonTree(partial));
+                streamed = true;
+            }
+            report(doneFiles, totalFiles);
         }
-        return Optional.of(found);
     }
 
     @Override
@@ -364,34 +601,36 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public Optional<RenameResponse> prepareRename(TextDocumentPositionParams params) {
-        if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
-        LOG.info("Try to rename...");
-        var file = Paths.get(params.textDocument.uri);
-        try (var task = compiler().compile(file)) {
-            var lines = task.root().getLineMap();
-            var cursor = lines.getPosition(params.position.line + 1, params.position.character + 1);
-            var path = new FindNameAt(task).scan(task.root(), cursor);
-            if (path == null) {
-                LOG.info("...no element under cursor");
-                return Optional.empty();
-            }
-            var el = Trees.instance(task.task).getElement(path);
-            if (el == null) {
-                LOG.info("...couldn't resolve element");
-                return Optional.empty();
-            }
-            if (!canRename(el)) {
-                LOG.info("...can't rename " + el);
-                return Optional.empty();
-            }
-            if (!canFindSource(el)) {
-                LOG.info("...can't find source for " + el);
-                return Optional.empty();
+        synchronized (compileLock) {
+            if (!FileStore.isJavaFile(params.textDocument.uri)) return Optional.empty();
+            LOG.info("Try to rename...");
+            var file = Paths.get(params.textDocument.uri);
+            try (var task = compiler().compile(file)) {
+                var lines = task.root().getLineMap();
+                var cursor = lines.getPosition(params.position.line + 1, params.position.character + 1);
+                var path = new FindNameAt(task).scan(task.root(), cursor);
+                if (path == null) {
+                    LOG.info("...no element under cursor");
+                    return Optional.empty();
+                }
+                var el = Trees.instance(task.task).getElement(path);
+                if (el == null) {
+                    LOG.info("...couldn't resolve element");
+                    return Optional.empty();
+                }
+                if (!canRename(el)) {
+                    LOG.info("...can't rename " + el);
+                    return Optional.empty();
+                }
+                if (!canFindSource(el)) {
+                    LOG.info("...can't find source for " + el);
+                    return Optional.empty();
+                }
+                var response = new RenameResponse();
+                response.range = FindHelper.location(task, path).range;
+                response.placeholder = el.getSimpleName().toString();
+                return Optional.of(response);
             }
-            var response = new RenameResponse();
-            response.range = FindHelper.location(task, path).range;
-            response.placeholder = el.getSimpleName().toString();
-            return Optional.of(response);
         }
     }
 
@@ -423,7 +662,13 @@ class JavaLanguageServer extends LanguageServer {
     public WorkspaceEdit rename(RenameParams params) {
         var rw = createRewrite(params);
         var response = new WorkspaceEdit();
-        var map = rw.rewrite(compiler());
+        var progress = new BatchProgress("Rename");
+        Map<Path, TextEdit[]> map;
+        try {
+            map = rw.rewrite(compiler(), progress::report);
+        } finally {
+            progress.end();
+        }
         for (var editedFile : map.keySet()) {
             response.changes.put(editedFile.toUri(), List.of(map.get(editedFile)));
         }
@@ -462,14 +707,14 @@ class JavaLanguageServer extends LanguageServer {
             var type = method.getParameters().get(i).asType();
             erasedParameterTypes[i] = task.task.getTypes().erasure(type).toString();
         }
-        return new RenameMethod(className, methodName, erasedParameterTypes, newName);
+        return new RenameMethod(className, methodName, erasedParameterTypes, newName, batchSize);
     }
 
     private RenameField renameField(CompileTask task, VariableElement field, String newName) {
         var parent = (TypeElement) field.getEnclosingElement();
         var className = parent.getQualifiedName().toString();
         var fieldName = field.getSimpleName().toString();
-        return new RenameField(className, fieldName, newName);
+        return new RenameField(className, fieldName, newName, batchSize);
     }
 
     private RenameVariable renameVariable(CompileTask task, VariableElement variable, String newName) {
@@ -510,11 +755,13 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<CodeAction> codeAction(CodeActionParams params) {
-        var provider = new CodeActionProvider(compiler());
-        if (params.context.diagnostics.isEmpty()) {
-            return provider.codeActionsForCursor(params);
-        } else {
-            return provider.codeActionForDiagnostics(params);
+        synchronized (compileLock) {
+            var provider = new CodeActionProvider(compiler());
+            if (params.context.diagnostics.isEmpty()) {
+                return provider.codeActionsForCursor(params);
+            } else {
+                return provider.codeActionForDiagnostics(params);
+            }
         }
     }
 
@@ -522,16 +769,20 @@ class JavaLanguageServer extends LanguageServer {
     public void didSaveTextDocument(DidSaveTextDocumentParams params) {
         if (FileStore.isJavaFile(params.textDocument.uri)) {
             // Re-lint all active documents
-            lint(FileStore.activeDocuments());
+            lintInBackground(FileStore.activeDocuments());
         }
     }
 
     @Override
     public void doAsyncWork() {
         if (uncheckedChanges && FileStore.activeDocuments().contains(lastEdited)) {
-            lint(List.of(lastEdited));
+            lintInBackground(List.of(lastEdited));
             uncheckedChanges = false;
         }
+        if (!prefetchDocs.isEmpty()) {
+            new HoverProvider(compiler()).prefetch(prefetchDocs);
+            prefetchDocs = List.of();
+        }
     }
 
     private static final Logger LOG = Logger.getLogger("main");
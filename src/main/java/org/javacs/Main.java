@@ -1,5 +1,7 @@
 package org.javacs;
 
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,6 +28,15 @@ public class Main {
         try {
             // Logger.getLogger("").addHandler(new FileHandler("javacs.%u.log", false));
             setRootFormat();
+            for (var arg : args) {
+                if (arg.startsWith("--metrics=")) {
+                    var file = Paths.get(arg.substring("--metrics=".length()));
+                    LSP.metrics().dumpPeriodically(file, Duration.ofMinutes(1));
+                }
+                if (arg.startsWith("--record=")) {
+                    LSP.recordTo(Paths.get(arg.substring("--record=".length())));
+                }
+            }
 
             LSP.connect(JavaLanguageServer::new, System.in, System.out);
         } catch (Throwable t) {
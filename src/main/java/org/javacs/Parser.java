@@ -16,6 +16,7 @@ import org.javacs.lsp.*;
 
 class Parser {
     private static final JavaCompiler COMPILER = ServiceLoader.load(JavaCompiler.class).iterator().next();
+    // Only used while holding the lock in parseJavaFileObject
     private static final SourceFileManager FILE_MANAGER = new SourceFileManager();
 
     /** Create a task that compiles a single file */
@@ -31,6 +32,8 @@ class Parser {
     final Trees trees;
 
     private Parser(JavaFileObject file) {
+        var event = new Events.Parse();
+        event.begin();
         this.file = file;
         try {
             this.contents = file.getCharContent(false).toString();
@@ -44,6 +47,12 @@ class Parser {
             throw new RuntimeException(e);
         }
         this.trees = Trees.instance(task);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getName();
+            event.chars = contents.length();
+            event.commit();
+        }
     }
 
     static Parser parseFile(Path file) {
@@ -65,7 +74,8 @@ class Parser {
         cachedModified = file.getLastModified();
     }
 
-    static Parser parseJavaFileObject(JavaFileObject file) {
+    // The background linter parses files too, so the cache is shared between threads
+    static synchronized Parser parseJavaFileObject(JavaFileObject file) {
         if (needsParse(file)) {
             loadParse(file);
         } else {
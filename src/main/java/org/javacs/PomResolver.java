@@ -0,0 +1,568 @@
+package org.javacs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * PomResolver finds the class path of a maven project by reading pom.xml files and the local repository, without
+ * running maven. It understands parent POMs, properties, dependencyManagement and imported BOMs, scopes, optional
+ * dependencies, exclusions, and modules that depend on each other.
+ *
+ * <p>It never downloads anything. If a jar isn't in the local repository, or a POM uses something it doesn't
+ * understand, like a version range or a dependency added by a profile that is activated by the JDK, OS, properties or
+ * files, it gives up and the caller runs mvn.
+ */
+class PomResolver {
+    /** The jars on the class path, and the source jars of those that have sources in the local repository */
+    static class Resolved {
+        final Set<Path> classPath = new HashSet<>(), docPath = new HashSet<>();
+        /** Jars on the class path whose source jars aren't in the local repository, so maven would download them */
+        final Set<Path> missingSources = new HashSet<>();
+    }
+
+    /** Thrown when the project can't be resolved without running maven */
+    private static class CantResolve extends RuntimeException {
+        CantResolve(String message) {
+            super(message);
+        }
+    }
+
+    private static class Dependency {
+        String groupId, artifactId, version, type, classifier, scope, systemPath;
+        boolean optional;
+        /** groupId:artifactId of dependencies to leave out, either of which may be * */
+        List<String> exclusions = new ArrayList<>();
+
+        /** Maven picks one version for each key */
+        String key() {
+            return groupId + ":" + artifactId + ":" + type + ":" + classifier;
+        }
+
+        Artifact artifact() {
+            return new Artifact(groupId, artifactId, version);
+        }
+    }
+
+    /** A pom.xml merged with its parents, but with ${properties} not yet replaced */
+    private static class Model {
+        Path file;
+        String groupId, artifactId, version, parentGroupId, parentVersion;
+        Map<String, String> properties = new HashMap<>();
+        /** Properties that a profile we can't evaluate might set, so using them means we have to run maven */
+        Set<String> conditionalProperties = new HashSet<>();
+        /** The child's dependencies before the parent's, so the child's win */
+        List<Dependency> dependencies = new ArrayList<>(), managed = new ArrayList<>();
+        List<String> modules = new ArrayList<>();
+    }
+
+    /** A Model with ${properties} replaced and BOMs imported */
+    private static class Project {
+        Model model;
+        Artifact artifact;
+        List<Dependency> dependencies = new ArrayList<>();
+        Map<String, Dependency> managed = new LinkedHashMap<>();
+    }
+
+    private final Path repository;
+    /** -D properties from .mvn/maven.config, which override the POM */
+    private final Map<String, String> userProperties = new HashMap<>();
+    /** pom.xml files in the workspace by groupId:artifactId, so modules can depend on each other without installing */
+    private final Map<String, Path> reactor = new HashMap<>();
+    private final Map<Path, Model> models = new HashMap<>();
+    private final Map<Path, Project> projects = new HashMap<>();
+
+    PomResolver(Path repository) {
+        this.repository = repository;
+    }
+
+    Optional<Resolved> resolve(Path pomXml) {
+        var started = Instant.now();
+        try {
+            readMavenConfig(pomXml.toAbsolutePath().getParent());
+            var all = new ArrayList<Project>();
+            addModules(pomXml.toAbsolutePath().normalize(), all);
+            var resolved = new Resolved();
+            for (var project : all) {
+                resolve(project, resolved);
+            }
+            var elapsed = Duration.between(started, Instant.now()).toMillis();
+            LOG.info(String.format("Resolved %d jars from %s in %d ms", resolved.classPath.size(), pomXml, elapsed));
+            return Optional.of(resolved);
+        } catch (CantResolve e) {
+            LOG.info("Can't resolve " + pomXml + " without running maven: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void readMavenConfig(Path workspaceRoot) {
+        var config = workspaceRoot.resolve(".mvn/maven.config");
+        if (!Files.exists(config)) return;
+        try {
+            for (var arg : Files.readString(config).split("\\s+")) {
+                if (!arg.startsWith("-D")) continue;
+                var equals = arg.indexOf('=');
+                if (equals == -1) userProperties.put(arg.substring(2), "true");
+                else userProperties.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Add `pomXml` and all its modules to the reactor, and to `all` */
+    private void addModules(Path pomXml, List<Project> all) {
+        var project = project(pomXml);
+        reactor.put(project.artifact.groupId + ":" + project.artifact.artifactId, pomXml);
+        all.add(project);
+        for (var module : project.model.modules) {
+            var dir = pomXml.getParent().resolve(interpolate(module, project.model)).normalize();
+            var modulePom = Files.isDirectory(dir) ? dir.resolve("pom.xml") : dir;
+            if (!Files.exists(modulePom)) {
+                throw new CantResolve("module " + modulePom + " does not exist");
+            }
+            addModules(modulePom, all);
+        }
+    }
+
+    /** A dependency waiting to be resolved, along with the exclusions of the dependencies that led to it */
+    private static class Pending {
+        final Dependency dependency;
+        final List<String> exclusions;
+
+        Pending(Dependency dependency, List<String> exclusions) {
+            this.dependency = dependency;
+            this.exclusions = exclusions;
+        }
+    }
+
+    /** Collect the jars of the dependencies of `project`, nearest first, the way maven does */
+    private void resolve(Project project, Resolved resolved) {
+        var queue = new ArrayDeque<Pending>();
+        for (var d : project.dependencies) {
+            queue.add(new Pending(d, d.exclusions));
+        }
+        var seen = new HashSet<String>();
+        while (!queue.isEmpty()) {
+            var next = queue.poll();
+            var d = next.dependency;
+            if (!seen.add(d.key())) continue;
+            checkVersion(d);
+            if (d.scope.equals("system")) {
+                if (d.systemPath != null && Files.exists(Path.of(d.systemPath))) {
+                    resolved.classPath.add(Path.of(d.systemPath));
+                }
+                continue;
+            }
+            var module = reactor.get(d.groupId + ":" + d.artifactId);
+            // The sources of modules in the workspace are already on the source path
+            if (module == null && isJar(d.type)) {
+                var jar = artifactFile(d, classifier(d), "jar");
+                if (!Files.exists(jar)) {
+                    throw new CantResolve(jar + " is not in the local repository");
+                }
+                resolved.classPath.add(jar);
+                var sources = artifactFile(d, "sources", "jar");
+                if (Files.exists(sources)) {
+                    resolved.docPath.add(sources);
+                } else {
+                    resolved.missingSources.add(jar);
+                }
+            }
+            var pom = module != null ? module : artifactFile(d, "", "pom");
+            if (!Files.exists(pom)) {
+                // Maven treats a jar without a POM as a jar without dependencies
+                if (d.type.equals("pom")) throw new CantResolve(pom + " is not in the local repository");
+                continue;
+            }
+            var dependencyProject = project(pom);
+            for (var child : dependencyProject.dependencies) {
+                if (child.optional) continue;
+                if (child.scope.equals("test") || child.scope.equals("provided")) continue;
+                if (isExcluded(child, next.exclusions)) continue;
+                // The root project's dependencyManagement overrides the versions of transitive dependencies
+                var managed = project.managed.get(child.key());
+                if (managed != null && managed.version != null) {
+                    child = copy(child);
+                    child.version = managed.version;
+                }
+                var exclusions = new ArrayList<>(next.exclusions);
+                exclusions.addAll(child.exclusions);
+                queue.add(new Pending(child, exclusions));
+            }
+        }
+    }
+
+    private static boolean isJar(String type) {
+        switch (type) {
+            case "jar":
+            case "test-jar":
+            case "bundle":
+            case "ejb":
+            case "maven-plugin":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String classifier(Dependency d) {
+        if (d.classifier.isEmpty() && d.type.equals("test-jar")) return "tests";
+        return d.classifier;
+    }
+
+    private static final Pattern VERSION_RANGE = Pattern.compile("[\\[\\](),]");
+
+    private static void checkVersion(Dependency d) {
+        if (d.version == null || d.version.isEmpty()) {
+            throw new CantResolve("no version for " + d.key());
+        }
+        if (VERSION_RANGE.matcher(d.version).find()) {
+            throw new CantResolve("version range " + d.version + " for " + d.key());
+        }
+    }
+
+    private static boolean isExcluded(Dependency d, List<String> exclusions) {
+        for (var e : exclusions) {
+            var parts = e.split(":");
+            var groupMatches = parts[0].equals("*") || parts[0].equals(d.groupId);
+            var artifactMatches = parts[1].equals("*") || parts[1].equals(d.artifactId);
+            if (groupMatches && artifactMatches) return true;
+        }
+        return false;
+    }
+
+    /** Where artifact `d` is in the local repository, for example com/google/gson/gson/2.8.9/gson-2.8.9.jar */
+    private Path artifactFile(Dependency d, String classifier, String extension) {
+        var name = d.artifactId + "-" + d.version + (classifier.isEmpty() ? "" : "-" + classifier) + "." + extension;
+        return repository
+                .resolve(d.groupId.replace('.', File.separatorChar))
+                .resolve(d.artifactId)
+                .resolve(d.version)
+                .resolve(name);
+    }
+
+    private Path pomFile(Artifact a) {
+        var module = reactor.get(a.groupId + ":" + a.artifactId);
+        if (module != null) return module;
+        var d = new Dependency();
+        d.groupId = a.groupId;
+        d.artifactId = a.artifactId;
+        d.version = a.version;
+        return artifactFile(d, "", "pom");
+    }
+
+    /** Read `pomXml`, merge it with its parents, replace its ${properties}, and import its BOMs */
+    private Project project(Path pomXml) {
+        var cached = projects.get(pomXml);
+        if (cached != null) return cached;
+        var model = model(pomXml);
+        var project = new Project();
+        project.model = model;
+        project.artifact = new Artifact(model.groupId, model.artifactId, interpolate(model.version, model));
+        var imports = new ArrayList<Dependency>();
+        for (var raw : model.managed) {
+            var d = interpolate(raw, model);
+            if (d.scope.equals("import")) imports.add(d);
+            else project.managed.putIfAbsent(d.key(), d);
+        }
+        // Managed dependencies declared in the POM win over those imported from BOMs
+        for (var bom : imports) {
+            checkVersion(bom);
+            var file = pomFile(bom.artifact());
+            if (!Files.exists(file)) {
+                throw new CantResolve("BOM " + file + " is not in the local repository");
+            }
+            for (var d : project(file).managed.values()) {
+                project.managed.putIfAbsent(d.key(), d);
+            }
+        }
+        for (var raw : model.dependencies) {
+            var d = interpolate(raw, model);
+            var managed = project.managed.get(d.key());
+            if (managed != null) {
+                if (d.version == null) d.version = managed.version;
+                if (d.scope.isEmpty()) d.scope = managed.scope;
+                if (d.exclusions.isEmpty()) d.exclusions = managed.exclusions;
+            }
+            if (d.scope.isEmpty()) d.scope = "compile";
+            project.dependencies.add(d);
+        }
+        projects.put(pomXml, project);
+        return project;
+    }
+
+    private Dependency interpolate(Dependency raw, Model model) {
+        var d = copy(raw);
+        d.groupId = interpolate(raw.groupId, model);
+        d.artifactId = interpolate(raw.artifactId, model);
+        d.version = raw.version == null ? null : interpolate(raw.version, model);
+        d.type = interpolate(raw.type, model);
+        d.classifier = interpolate(raw.classifier, model);
+        d.scope = interpolate(raw.scope, model);
+        d.systemPath = raw.systemPath == null ? null : interpolate(raw.systemPath, model);
+        return d;
+    }
+
+    private static Dependency copy(Dependency d) {
+        var copy = new Dependency();
+        copy.groupId = d.groupId;
+        copy.artifactId = d.artifactId;
+        copy.version = d.version;
+        copy.type = d.type;
+        copy.classifier = d.classifier;
+        copy.scope = d.scope;
+        copy.systemPath = d.systemPath;
+        copy.optional = d.optional;
+        copy.exclusions = d.exclusions;
+        return copy;
+    }
+
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private String interpolate(String value, Model model) {
+        for (var depth = 0; value.contains("${"); depth++) {
+            if (depth > 10) throw new CantResolve("recursive property in " + value);
+            var matcher = PROPERTY.matcher(value);
+            var result = new StringBuilder();
+            while (matcher.find()) {
+                var found = property(matcher.group(1), model);
+                if (found == null) throw new CantResolve("undefined property ${" + matcher.group(1) + "}");
+                matcher.appendReplacement(result, found.replace("\\", "\\\\").replace("$", "\\$"));
+            }
+            matcher.appendTail(result);
+            value = result.toString();
+        }
+        return value;
+    }
+
+    private String property(String name, Model model) {
+        if (userProperties.containsKey(name)) return userProperties.get(name);
+        switch (name) {
+            case "project.groupId":
+            case "pom.groupId":
+            case "groupId":
+                return model.groupId;
+            case "project.artifactId":
+            case "pom.artifactId":
+            case "artifactId":
+                return model.artifactId;
+            case "project.version":
+            case "pom.version":
+            case "version":
+                return model.version;
+            case "project.parent.groupId":
+                return model.parentGroupId;
+            case "project.parent.version":
+                return model.parentVersion;
+            case "project.basedir":
+            case "basedir":
+                return model.file.getParent().toString();
+        }
+        if (model.conditionalProperties.contains(name)) {
+            throw new CantResolve("${" + name + "} is set by a profile that depends on how maven is run");
+        }
+        if (model.properties.containsKey(name)) return model.properties.get(name);
+        if (name.startsWith("env.")) return System.getenv(name.substring("env.".length()));
+        return System.getProperty(name);
+    }
+
+    /** Read `pomXml` and merge it with its parents */
+    private Model model(Path pomXml) {
+        var cached = models.get(pomXml);
+        if (cached != null) return cached;
+        var project = parse(pomXml);
+        var model = new Model();
+        model.file = pomXml;
+        var parentElement = child(project, "parent");
+        var parent = parentElement == null ? null : parent(pomXml, parentElement);
+        model.artifactId = text(project, "artifactId");
+        model.groupId = text(project, "groupId");
+        model.version = text(project, "version");
+        if (parent != null) {
+            model.parentGroupId = parent.groupId;
+            model.parentVersion = parent.version;
+            if (model.groupId == null) model.groupId = parent.groupId;
+            if (model.version == null) model.version = parent.version;
+            model.properties.putAll(parent.properties);
+            model.conditionalProperties.addAll(parent.conditionalProperties);
+        }
+        if (model.groupId == null || model.artifactId == null || model.version == null) {
+            throw new CantResolve(pomXml + " doesn't have a groupId, artifactId and version");
+        }
+        if (child(child(project, "distributionManagement"), "relocation") != null) {
+            throw new CantResolve(pomXml + " has been relocated");
+        }
+        readSection(project, model);
+        var conditional = new ArrayList<Element>();
+        for (var profile : children(child(project, "profiles"), "profile")) {
+            var activation = child(profile, "activation");
+            // Profiles without an activation are only used when asked for with -P
+            if (activation == null) continue;
+            if (isOnlyActiveByDefault(activation)) {
+                readSection(profile, model);
+            } else if (hasConditions(activation)) {
+                conditional.add(profile);
+            }
+        }
+        for (var profile : conditional) {
+            readConditionalProfile(pomXml, profile, model);
+        }
+        for (var module : children(child(project, "modules"), "module")) {
+            model.modules.add(module.getTextContent().trim());
+        }
+        // The child's dependencies come first, so they win over the parent's
+        if (parent != null) {
+            model.dependencies.addAll(parent.dependencies);
+            model.managed.addAll(parent.managed);
+        }
+        models.put(pomXml, model);
+        return model;
+    }
+
+    /** True only if `<activeByDefault>true</activeByDefault>` is the sole activation condition */
+    private static boolean isOnlyActiveByDefault(Element activation) {
+        return !hasConditions(activation) && "true".equals(text(activation, "activeByDefault"));
+    }
+
+    /** True if the activation depends on the JDK, OS, properties or files, rather than only activeByDefault */
+    private static boolean hasConditions(Element activation) {
+        for (var n = activation.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && !n.getNodeName().equals("activeByDefault")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A profile activated by the JDK, OS, properties or files depends on things only maven can check. Most of them,
+     * like those in parent POMs, only configure plugins and don't matter to us. If one adds dependencies we give up,
+     * and if it sets properties we give up when a dependency uses one of them.
+     */
+    private void readConditionalProfile(Path pomXml, Element profile, Model model) {
+        if (child(profile, "dependencies") != null || child(profile, "dependencyManagement") != null) {
+            var id = text(profile, "id");
+            throw new CantResolve(pomXml + " has profile " + id + " that depends on how maven is run");
+        }
+        var properties = child(profile, "properties");
+        if (properties == null) return;
+        for (var p = properties.getFirstChild(); p != null; p = p.getNextSibling()) {
+            if (p.getNodeType() != Node.ELEMENT_NODE) continue;
+            model.conditionalProperties.add(p.getNodeName());
+        }
+    }
+
+    /** Read the properties, dependencies and dependencyManagement of a project or profile */
+    private void readSection(Element section, Model model) {
+        var properties = child(section, "properties");
+        if (properties != null) {
+            for (var p = properties.getFirstChild(); p != null; p = p.getNextSibling()) {
+                if (p.getNodeType() != Node.ELEMENT_NODE) continue;
+                model.properties.put(p.getNodeName(), p.getTextContent().trim());
+                model.conditionalProperties.remove(p.getNodeName());
+            }
+        }
+        for (var d : children(child(section, "dependencies"), "dependency")) {
+            model.dependencies.add(dependency(d));
+        }
+        for (var d : children(child(child(section, "dependencyManagement"), "dependencies"), "dependency")) {
+            model.managed.add(dependency(d));
+        }
+    }
+
+    private Model parent(Path child, Element parent) {
+        var groupId = text(parent, "groupId");
+        var artifactId = text(parent, "artifactId");
+        var version = text(parent, "version");
+        var relativePath = text(parent, "relativePath");
+        if (relativePath == null) relativePath = "../pom.xml";
+        if (!relativePath.isEmpty()) {
+            var file = child.getParent().resolve(relativePath).normalize();
+            if (Files.isDirectory(file)) file = file.resolve("pom.xml");
+            if (Files.exists(file) && artifactId.equals(text(parse(file), "artifactId"))) {
+                return model(file);
+            }
+        }
+        if (groupId == null || version == null || version.contains("${")) {
+            throw new CantResolve("can't find parent " + artifactId + " of " + child);
+        }
+        var file = pomFile(new Artifact(groupId, artifactId, version));
+        if (!Files.exists(file)) {
+            throw new CantResolve("parent " + file + " is not in the local repository");
+        }
+        return model(file);
+    }
+
+    private static Dependency dependency(Element element) {
+        var d = new Dependency();
+        d.groupId = text(element, "groupId");
+        d.artifactId = text(element, "artifactId");
+        d.version = text(element, "version");
+        d.type = Objects.requireNonNullElse(text(element, "type"), "jar");
+        d.classifier = Objects.requireNonNullElse(text(element, "classifier"), "");
+        d.scope = Objects.requireNonNullElse(text(element, "scope"), "");
+        d.systemPath = text(element, "systemPath");
+        d.optional = "true".equals(text(element, "optional"));
+        for (var e : children(child(element, "exclusions"), "exclusion")) {
+            d.exclusions.add(text(e, "groupId") + ":" + text(e, "artifactId"));
+        }
+        if (d.groupId == null || d.artifactId == null) {
+            throw new CantResolve("dependency without groupId or artifactId");
+        }
+        return d;
+    }
+
+    private static Element parse(Path pomXml) {
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder().parse(pomXml.toFile()).getDocumentElement();
+        } catch (SAXException e) {
+            throw new CantResolve("can't parse " + pomXml + ": " + e.getMessage());
+        } catch (ParserConfigurationException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Element child(Element parent, String name) {
+        if (parent == null) return null;
+        for (var n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(name)) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        var found = new ArrayList<Element>();
+        if (parent == null) return found;
+        for (var n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(name)) {
+                found.add((Element) n);
+            }
+        }
+        return found;
+    }
+
+    private static String text(Element parent, String name) {
+        var child = child(parent, name);
+        if (child == null) return null;
+        return child.getTextContent().trim();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,22 +1,36 @@
 package org.javacs;
 
+import com.google.gson.reflect.TypeToken;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.logging.Logger;
 import org.javacs.guava.ClassPath;
 
 class ScanClassPath {
 
-    // TODO delete this and implement findPublicTypeDeclarationInJdk some other way
     /** All exported modules that are present in JDK 10 or 11 */
     static String[] JDK_MODULES = {
         "java.activation",
@@ -111,7 +125,17 @@ class ScanClassPath {
         "jdk.zipfs",
     };
 
-    static Set<String> jdkTopLevelClasses() {
+    private static Set<String> cacheJdkClasses;
+
+    /** The JDK can't change while we're running, so it is only scanned once */
+    static synchronized Set<String> jdkTopLevelClasses() {
+        if (cacheJdkClasses == null) {
+            cacheJdkClasses = Collections.unmodifiableSet(scanJdk());
+        }
+        return cacheJdkClasses;
+    }
+
+    private static Set<String> scanJdk() {
         LOG.info("Searching for top-level classes in the JDK");
 
         var classes = new HashSet<String>();
@@ -142,7 +166,57 @@ class ScanClassPath {
     static Set<String> classPathTopLevelClasses(Set<Path> classPath) {
         LOG.info(String.format("Searching for top-level classes in %d classpath locations", classPath.size()));
 
-        var urls = classPath.stream().map(ScanClassPath::toUrl).toArray(URL[]::new);
+        var started = Instant.now();
+        var jars = new HashSet<Path>();
+        var directories = new HashSet<Path>();
+        for (var p : classPath) {
+            if (Files.isDirectory(p)) {
+                directories.add(p);
+            } else if (Files.isRegularFile(p)) {
+                jars.add(p);
+            }
+        }
+        var classes = ConcurrentHashMap.<String>newKeySet();
+        classes.addAll(directoryTopLevelClasses(directories));
+        // Scan jars in parallel, following Class-Path manifest entries until there is nothing new to scan
+        var seen = new HashSet<Path>(jars);
+        var rescanned = new AtomicInteger();
+        while (!jars.isEmpty()) {
+            var manifestClassPath = ConcurrentHashMap.<Path>newKeySet();
+            jars.parallelStream()
+                    .forEach(
+                            jar -> {
+                                var index = jarIndex(jar, rescanned);
+                                classes.addAll(index.classes);
+                                for (var p : index.manifestClassPath) {
+                                    manifestClassPath.add(Paths.get(p));
+                                }
+                            });
+            jars = new HashSet<>();
+            for (var p : manifestClassPath) {
+                if (seen.add(p) && Files.isRegularFile(p)) {
+                    jars.add(p);
+                }
+            }
+        }
+        if (rescanned.get() > 0) {
+            saveJarIndexes();
+        }
+
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(
+                String.format(
+                        "Found %d classes in classpath (rescanned %d jars) in %,d ms",
+                        classes.size(), rescanned.get(), elapsed));
+
+        return classes;
+    }
+
+    /** Directories like target/classes change all the time, so we scan them every time using the guava scanner */
+    private static Set<String> directoryTopLevelClasses(Set<Path> directories) {
+        var classes = new HashSet<String>();
+        if (directories.isEmpty()) return classes;
+        var urls = directories.stream().map(ScanClassPath::toUrl).toArray(URL[]::new);
         var classLoader = new URLClassLoader(urls, null);
         ClassPath scanner;
         try {
@@ -150,14 +224,101 @@ class ScanClassPath {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        var classes = new HashSet<String>();
         for (var c : scanner.getTopLevelClasses()) {
             classes.add(c.getName());
         }
+        return classes;
+    }
 
-        LOG.info(String.format("Found %d classes in classpath", classes.size()));
+    /** JarIndex is the list of top-level classes in a jar, along with the size and modified time it was computed for */
+    private static class JarIndex {
+        long size, modified;
+        List<String> classes = List.of(), manifestClassPath = List.of();
+    }
 
-        return classes;
+    private static final String JAR_INDEX_CACHE = "classpath-index.json";
+
+    private static Map<String, JarIndex> cacheJarIndexes;
+
+    private static synchronized Map<String, JarIndex> jarIndexes() {
+        if (cacheJarIndexes == null) {
+            var type = new TypeToken<Map<String, JarIndex>>() {}.getType();
+            Map<String, JarIndex> saved = DiskCache.<Map<String, JarIndex>>read(JAR_INDEX_CACHE, type).orElse(Map.of());
+            cacheJarIndexes = new ConcurrentHashMap<>(saved);
+        }
+        return cacheJarIndexes;
+    }
+
+    private static synchronized void saveJarIndexes() {
+        // Forget jars that have been deleted, so the cache doesn't grow forever
+        jarIndexes().keySet().removeIf(jar -> !Files.exists(Paths.get(jar)));
+        DiskCache.write(JAR_INDEX_CACHE, jarIndexes());
+    }
+
+    private static JarIndex jarIndex(Path jar, AtomicInteger rescanned) {
+        var key = jar.toAbsolutePath().normalize().toString();
+        long size, modified;
+        try {
+            size = Files.size(jar);
+            modified = Files.getLastModifiedTime(jar).toMillis();
+        } catch (IOException e) {
+            LOG.warning("Couldn't read " + jar + ": " + e.getMessage());
+            return new JarIndex();
+        }
+        var cached = jarIndexes().get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            return cached;
+        }
+        var scanned = scanJar(jar);
+        // Don't remember failed scans, so a jar that is still being written is scanned again next time
+        if (scanned.isEmpty()) return new JarIndex();
+        var index = scanned.get();
+        index.size = size;
+        index.modified = modified;
+        jarIndexes().put(key, index);
+        rescanned.incrementAndGet();
+        return index;
+    }
+
+    private static Optional<JarIndex> scanJar(Path jar) {
+        var index = new JarIndex();
+        try (var jarFile = new JarFile(jar.toFile())) {
+            var classes = new ArrayList<String>();
+            var entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                var name = entries.nextElement().getName();
+                if (!name.endsWith(".class") || name.contains("$")) continue;
+                if (name.endsWith("module-info.class") || name.endsWith("package-info.class")) continue;
+                var trim = name.substring(0, name.length() - ".class".length());
+                classes.add(trim.replace('/', '.'));
+            }
+            index.classes = classes;
+            index.manifestClassPath = manifestClassPath(jar, jarFile.getManifest());
+        } catch (IOException e) {
+            // Not a jar file
+            LOG.warning("Couldn't scan " + jar + ": " + e.getMessage());
+            return Optional.empty();
+        }
+        return Optional.of(index);
+    }
+
+    private static List<String> manifestClassPath(Path jar, Manifest manifest) {
+        if (manifest == null) return List.of();
+        var attribute = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        if (attribute == null) return List.of();
+        var paths = new ArrayList<String>();
+        for (var entry : attribute.split(" ")) {
+            if (entry.isEmpty()) continue;
+            try {
+                var url = new URL(jar.toUri().toURL(), entry);
+                if (url.getProtocol().equals("file")) {
+                    paths.add(Paths.get(url.toURI()).toString());
+                }
+            } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+                LOG.warning("Invalid Class-Path entry " + entry + " in " + jar);
+            }
+        }
+        return paths;
     }
 
     private static URL toUrl(Path p) {
@@ -100,6 +100,11 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
         fileManager.setLocation(location, files);
     }
 
+    /** Wrap a file in any file system, for example a .java file inside a source .jar */
+    JavaFileObject getJavaFileObject(Path file) {
+        return fileManager.getJavaFileObjects(file).iterator().next();
+    }
+
     void setLocationFromPaths(Location location, Collection<? extends Path> searchpath) throws IOException {
         fileManager.setLocationFromPaths(location, searchpath);
     }
@@ -196,7 +196,30 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    // Workspace symbols search on a worker thread while other requests and the linter search too, so each thread
+    // gets its own buffer
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
+
+    /** Read up to 1 MB of data from `java` into this thread's SEARCH_BUFFER */
+    private static ByteBuffer readSearchBuffer(FileChannel channel, Path java, String query) throws IOException {
+        var event = new Events.Search();
+        event.begin();
+        var buffer = SEARCH_BUFFER.get();
+        var limit = Math.min((int) channel.size(), buffer.capacity());
+        buffer.position(0);
+        buffer.limit(limit);
+        channel.read(buffer);
+        buffer.position(0);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = java.toString();
+            event.query = query;
+            event.bytes = limit;
+            event.commit();
+        }
+        return buffer;
+    }
 
     // TODO cache the progress made by searching shorter queries
     static boolean containsWordMatching(Path java, String query) {
@@ -205,13 +228,8 @@ public class StringSearch {
             return matchesTitleCase(text, query);
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = StandardCharsets.UTF_8.decode(SEARCH_BUFFER);
+            var buffer = readSearchBuffer(channel, java, query);
+            var chars = StandardCharsets.UTF_8.decode(buffer);
             return matchesTitleCase(chars, query);
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
@@ -228,13 +246,8 @@ public class StringSearch {
             return search.nextWord(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            var buffer = readSearchBuffer(channel, java, query);
+            return search.nextWord(buffer) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -250,13 +263,8 @@ public class StringSearch {
             return search.next(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            var buffer = readSearchBuffer(channel, java, query);
+            return search.next(buffer) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -168,7 +168,7 @@ public class CodeActionProvider {
             case "compiler.err.cant.resolve.location":
                 var simpleName = extractRange(task, d.range);
                 var allImports = new ArrayList<CodeAction>();
-                for (var qualifiedName : compiler.publicTopLevelTypes()) {
+                for (var qualifiedName : compiler.publicTopLevelTypes(simpleName.toString(), Integer.MAX_VALUE)) {
                     if (qualifiedName.endsWith("." + simpleName)) {
                         var title = "Import '" + qualifiedName + "'";
                         var addImport = new AddImport(file, qualifiedName);
@@ -40,6 +40,7 @@ import org.javacs.JsonHelper;
 import org.javacs.ParseTask;
 import org.javacs.SourceFileObject;
 import org.javacs.StringSearch;
+import org.javacs.lsp.CancelToken;
 import org.javacs.lsp.Command;
 import org.javacs.lsp.CompletionItem;
 import org.javacs.lsp.CompletionItemKind;
@@ -48,6 +49,8 @@ import org.javacs.lsp.InsertTextFormat;
 
 public class CompletionProvider {
     private final CompilerProvider compiler;
+    /** Type of the expression before the `.` or `::`, if the last completion was of members */
+    private String receiverType;
 
     public static final CompletionList NOT_SUPPORTED = new CompletionList(false, List.of());
     public static final int MAX_COMPLETION_ITEMS = 50;
@@ -123,13 +126,38 @@ public class CompletionProvider {
     public CompletionList complete(Path file, int line, int column) {
         LOG.info("Complete at " + file.getFileName() + "(" + line + "," + column + ")...");
         var started = Instant.now();
-        var task = compiler.parse(file);
-        var cursor = task.root.getLineMap().getPosition(line, column);
-        var contents = new PruneMethodBodies(task.task).scan(task.root, cursor);
-        var endOfLine = endOfLine(contents, (int) cursor);
+        var text = FileStore.contents(file);
+        var cursor = FileStore.offset(text, line, column);
+        var resumed = CompletionSession.resume(compiler, file, text, cursor);
+        if (resumed.isPresent()) {
+            logCompletionTiming(started, resumed.get().items, false);
+            return resumed.get();
+        }
+        // If we're still editing the same method body, we don't need to parse and prune the whole file again
+        var skeleton = Skeleton.fill(file, text, cursor);
+        ParseTask task = null;
+        StringBuilder contents;
+        if (skeleton.isPresent()) {
+            LOG.info("...using cached skeleton");
+            contents = skeleton.get();
+        } else {
+            task = compiler.parse(file);
+            var prune = new PruneMethodBodies(task.task);
+            contents = prune.scan(task.root, (long) cursor);
+            Skeleton.remember(file, text, contents, prune.liveBodyStart, prune.liveBodyEnd);
+        }
+        var endOfLine = endOfLine(contents, cursor);
         contents.insert(endOfLine, ';');
+        // If the user has typed again while we were pruning, don't bother compiling
+        CancelToken.current().checkCancelled();
         var list = compileAndComplete(file, contents.toString(), cursor);
-        addTopLevelSnippets(task, list);
+        // The skeleton is only used inside method bodies, where there is always a type declaration
+        if (task != null) {
+            addTopLevelSnippets(task, list);
+        }
+        if (receiverType != null && list != NOT_SUPPORTED) {
+            CompletionSession.start(compiler, file, text, cursor, receiverType, list);
+        }
         logCompletionTiming(started, list.items, list.isIncomplete);
         return list;
     }
@@ -150,6 +178,7 @@ public class CompletionProvider {
         var endsWithParen = endsWithParen(contents, (int) cursor);
         try (var task = compiler.compile(List.of(source))) {
             LOG.info("...compiled in " + Duration.between(started, Instant.now()).toMillis() + "ms");
+            CancelToken.current().checkCancelled();
             var path = new FindCompletionsAt(task.task).scan(task.root(), cursor);
             switch (path.getLeaf().getKind()) {
                 case IDENTIFIER:
@@ -341,8 +370,8 @@ public class CompletionProvider {
             list.items.add(classItem(className));
             uniques.add(className);
         }
-        for (var className : compiler.publicTopLevelTypes()) {
-            if (!StringSearch.matchesPartialName(simpleName(className), partial)) continue;
+        var limit = MAX_COMPLETION_ITEMS + uniques.size() + 1;
+        for (var className : compiler.publicTopLevelTypes(partial, limit)) {
             if (uniques.contains(className)) continue;
             if (list.items.size() > MAX_COMPLETION_ITEMS) {
                 list.isIncomplete = true;
@@ -363,6 +392,7 @@ public class CompletionProvider {
         var isStatic = trees.getElement(path) instanceof TypeElement;
         var scope = trees.getScope(path);
         var type = trees.getTypeMirror(path);
+        receiverType = type.toString();
         if (type instanceof ArrayType) {
             return completeArrayMemberSelect(isStatic);
         } else if (type instanceof TypeVariable) {
@@ -456,6 +486,7 @@ public class CompletionProvider {
         var isStatic = element instanceof TypeElement;
         var scope = trees.getScope(path);
         var type = trees.getTypeMirror(path);
+        receiverType = type.toString();
         if (type instanceof ArrayType) {
             return completeArrayMemberReference(isStatic);
         } else if (type instanceof TypeVariable) {
@@ -549,24 +580,32 @@ public class CompletionProvider {
         LOG.info("...complete import");
         var names = new HashSet<String>();
         var list = new CompletionList();
-        for (var className : compiler.publicTopLevelTypes()) {
-            if (className.startsWith(path)) {
-                var start = path.lastIndexOf('.');
-                var end = className.indexOf('.', path.length());
-                if (end == -1) end = className.length();
-                var segment = className.substring(start + 1, end);
-                if (names.contains(segment)) continue;
-                names.add(segment);
-                var isClass = end == path.length();
-                if (isClass) {
-                    list.items.add(classItem(className));
-                } else {
-                    list.items.add(packageItem(segment));
-                }
-                if (list.items.size() > MAX_COMPLETION_ITEMS) {
-                    list.isIncomplete = true;
-                    return list;
-                }
+        var start = path.lastIndexOf('.');
+        // Sub-packages of the package we're in, for example `import java.u` => `util`
+        for (var packageName : compiler.packageNames(path)) {
+            var end = packageName.indexOf('.', path.length());
+            if (end == -1) end = packageName.length();
+            var segment = packageName.substring(start + 1, end);
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            list.items.add(packageItem(segment));
+            if (list.items.size() > MAX_COMPLETION_ITEMS) {
+                list.isIncomplete = true;
+                return list;
+            }
+        }
+        // Classes in the package we're in, for example `import java.util.L` => `List`
+        var packageName = start == -1 ? "" : path.substring(0, start);
+        var partialName = path.substring(start + 1);
+        var limit = MAX_COMPLETION_ITEMS + 1 - list.items.size();
+        for (var className : compiler.publicTopLevelTypes(packageName, partialName, limit)) {
+            var segment = simpleName(className).toString();
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            list.items.add(classItem(className));
+            if (list.items.size() > MAX_COMPLETION_ITEMS) {
+                list.isIncomplete = true;
+                return list;
             }
         }
         return list;
@@ -0,0 +1,166 @@
+package org.javacs.completion;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.logging.Logger;
+import org.javacs.CompilerProvider;
+import org.javacs.FileStore;
+import org.javacs.StringSearch;
+import org.javacs.lsp.CompletionItem;
+import org.javacs.lsp.CompletionItemKind;
+import org.javacs.lsp.CompletionList;
+
+/**
+ * CompletionSession remembers the members found by the last completion after a `.` or `::`. While the user keeps typing
+ * the same identifier, for example `foo.b` => `foo.ba` => `foo.bar`, we answer by filtering the remembered members
+ * instead of compiling the file again.
+ *
+ * <p>A session is identified by the file, the offset where the identifier starts, and the receiver type. We can't know
+ * the receiver type without compiling, so instead we require the text before the identifier to be unchanged, which
+ * pins the receiver expression. Any other edit ends the session, and so does adding or removing a workspace file, or
+ * editing the file that declares the receiver type.
+ */
+class CompletionSession {
+    final CompilerProvider compiler;
+    final Path file;
+    /** Offset of the first character of the identifier being completed */
+    final int anchor;
+    /** Text of the file before anchor */
+    final String before;
+    final String receiverType, partial;
+    final boolean endsWithParen;
+    final CompletionList list;
+    /** FileStore.version() when the session started */
+    final long workspaceVersion;
+    /** The workspace file that declares receiverType, or NOT_FOUND, and its modified time */
+    final Path declaringFile;
+    final Instant declaringModified;
+
+    private CompletionSession(
+            CompilerProvider compiler,
+            Path file,
+            int anchor,
+            String before,
+            String receiverType,
+            String partial,
+            boolean endsWithParen,
+            CompletionList list,
+            Path declaringFile) {
+        this.compiler = compiler;
+        this.file = file;
+        this.anchor = anchor;
+        this.before = before;
+        this.receiverType = receiverType;
+        this.partial = partial;
+        this.endsWithParen = endsWithParen;
+        this.list = list;
+        this.declaringFile = declaringFile;
+        this.declaringModified = declaringFile == CompilerProvider.NOT_FOUND ? null : FileStore.modified(declaringFile);
+        // Looking up the modified time of a file FileStore hasn't seen yet changes the version, so do that first
+        this.workspaceVersion = FileStore.version();
+    }
+
+    private static CompletionSession current;
+
+    /** Remember the members of `receiverType` that were found by completing at `cursor` */
+    static synchronized void start(
+            CompilerProvider compiler,
+            Path file,
+            String contents,
+            int cursor,
+            String receiverType,
+            CompletionList list) {
+        if (list.isIncomplete) {
+            current = null;
+            return;
+        }
+        var anchor = identifierStart(contents, cursor);
+        var partial = contents.substring(anchor, cursor);
+        var before = contents.substring(0, anchor);
+        var declaringFile = declaringFile(compiler, file, receiverType);
+        current =
+                new CompletionSession(
+                        compiler,
+                        file,
+                        anchor,
+                        before,
+                        receiverType,
+                        partial,
+                        endsWithParen(contents, cursor),
+                        list,
+                        declaringFile);
+    }
+
+    /**
+     * The workspace file that declares `receiverType`. The file being completed doesn't count: it changes on every
+     * keystroke, and the text checks in `matches` already cover it.
+     */
+    private static Path declaringFile(CompilerProvider compiler, Path file, String receiverType) {
+        var className = receiverType;
+        var generic = className.indexOf('<');
+        if (generic != -1) {
+            className = className.substring(0, generic);
+        }
+        var found = compiler.findTypeDeclaration(className);
+        if (found.equals(file)) return CompilerProvider.NOT_FOUND;
+        return found;
+    }
+
+    /** If the user has only extended the identifier since the last completion, filter the remembered members */
+    static synchronized Optional<CompletionList> resume(
+            CompilerProvider compiler, Path file, String contents, int cursor) {
+        var session = current;
+        if (session == null) return Optional.empty();
+        if (!session.matches(compiler, file, contents, cursor)) {
+            current = null;
+            return Optional.empty();
+        }
+        var partial = contents.substring(session.anchor, cursor);
+        LOG.info("...continue completing members of " + session.receiverType + " matching `" + partial + "`");
+        var items = new ArrayList<CompletionItem>();
+        for (var item : session.list.items) {
+            // Keywords and snippets are offered regardless of the identifier, just like a fresh completion
+            if (isKeywordOrSnippet(item) || StringSearch.matchesPartialName(item.label, partial)) {
+                items.add(item);
+            }
+        }
+        return Optional.of(new CompletionList(false, items));
+    }
+
+    private boolean matches(CompilerProvider compiler, Path file, String contents, int cursor) {
+        if (this.compiler != compiler || !this.file.equals(file)) return false;
+        if (FileStore.version() != workspaceVersion) return false;
+        var found = declaringFile != CompilerProvider.NOT_FOUND;
+        if (found && !FileStore.modified(declaringFile).equals(declaringModified)) return false;
+        if (cursor < anchor + partial.length() || cursor > contents.length()) return false;
+        if (identifierStart(contents, cursor) != anchor) return false;
+        if (!contents.startsWith(partial, anchor)) return false;
+        if (endsWithParen(contents, cursor) != endsWithParen) return false;
+        return contents.regionMatches(0, before, 0, anchor);
+    }
+
+    private static boolean isKeywordOrSnippet(CompletionItem item) {
+        return item.kind == CompletionItemKind.Keyword || item.kind == CompletionItemKind.Snippet;
+    }
+
+    private static int identifierStart(String contents, int cursor) {
+        var start = cursor;
+        while (start > 0 && Character.isJavaIdentifierPart(contents.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private static boolean endsWithParen(String contents, int cursor) {
+        for (var i = cursor; i < contents.length(); i++) {
+            if (!Character.isJavaIdentifierPart(contents.charAt(i))) {
+                return contents.charAt(i) == '(';
+            }
+        }
+        return false;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -11,6 +11,8 @@ public class PruneMethodBodies extends TreeScanner<StringBuilder, Long> {
     private final JavacTask task;
     private final StringBuilder buf = new StringBuilder();
     private CompilationUnitTree root;
+    /** Position of the `{` and just after the `}` of the outermost method body that contains the cursor, or -1 */
+    public long liveBodyStart = -1, liveBodyEnd = -1;
 
     public PruneMethodBodies(JavacTask task) {
         this.task = task;
@@ -44,6 +46,10 @@ public class PruneMethodBodies extends TreeScanner<StringBuilder, Long> {
             }
             return buf;
         }
+        if (liveBodyStart == -1) {
+            liveBodyStart = start;
+            liveBodyEnd = end;
+        }
         super.visitMethod(t, find);
         return buf;
     }
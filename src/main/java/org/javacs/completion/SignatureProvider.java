@@ -40,8 +40,7 @@ public class SignatureProvider {
     }
 
     public SignatureHelp signatureHelp(Path file, int line, int column) {
-        // TODO prune
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compilePruned(file, line, column)) {
             var cursor = task.root().getLineMap().getPosition(line, column);
             var path = new FindInvocationAt(task.task).scan(task.root(), cursor);
             if (path == null) return NOT_SUPPORTED;
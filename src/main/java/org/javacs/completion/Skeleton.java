@@ -0,0 +1,62 @@
+package org.javacs.completion;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Skeleton remembers the last file we pruned for completion, with every method body erased except the one being
+ * edited. As long as the text outside that method body is unchanged, we can prune the next version of the file by
+ * splicing the new method body into the skeleton, without parsing the file again.
+ */
+class Skeleton {
+    final Path file;
+    /** Original text up to and including the `{` of the live method body, and from its `}` to the end of the file */
+    final String before, after;
+    /** Pruned text of the same regions */
+    final String prunedBefore, prunedAfter;
+
+    private Skeleton(Path file, String before, String after, String prunedBefore, String prunedAfter) {
+        this.file = file;
+        this.before = before;
+        this.after = after;
+        this.prunedBefore = prunedBefore;
+        this.prunedAfter = prunedAfter;
+    }
+
+    private static Skeleton current;
+
+    /**
+     * Remember how `contents` was pruned. `bodyStart` and `bodyEnd` are the positions of the `{` and just after the `}`
+     * of the method body that was left intact, or -1 if the cursor wasn't in a method body.
+     */
+    static synchronized void remember(Path file, String contents, CharSequence pruned, long bodyStart, long bodyEnd) {
+        if (bodyStart == -1 || contents.length() != pruned.length()) {
+            current = null;
+            return;
+        }
+        var start = (int) bodyStart + 1;
+        var end = (int) bodyEnd - 1;
+        current =
+                new Skeleton(
+                        file,
+                        contents.substring(0, start),
+                        contents.substring(end),
+                        pruned.subSequence(0, start).toString(),
+                        pruned.subSequence(end, pruned.length()).toString());
+    }
+
+    /** If `contents` only differs from the skeleton inside the live method body, prune it by splicing */
+    static synchronized Optional<StringBuilder> fill(Path file, String contents, int cursor) {
+        var skeleton = current;
+        if (skeleton == null || !skeleton.file.equals(file)) return Optional.empty();
+        var bodyStart = skeleton.before.length();
+        var bodyEnd = contents.length() - skeleton.after.length();
+        if (bodyEnd < bodyStart || cursor < bodyStart || cursor > bodyEnd) return Optional.empty();
+        if (!contents.startsWith(skeleton.before) || !contents.endsWith(skeleton.after)) return Optional.empty();
+        var buf = new StringBuilder(contents.length());
+        buf.append(skeleton.prunedBefore);
+        buf.append(contents, bodyStart, bodyEnd);
+        buf.append(skeleton.prunedAfter);
+        return Optional.of(buf);
+    }
+}
@@ -3,98 +3,27 @@ package org.javacs.debug.proto;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.javacs.lsp.MessageInput;
+import org.javacs.lsp.MessageOutput;
 
 public class DebugAdapter {
     private static final Gson gson = new Gson();
 
-    private static String readHeader(InputStream client) {
-        var line = new StringBuilder();
-        for (var next = read(client); true; next = read(client)) {
-            if (next == '\r') {
-                var last = read(client);
-                assert last == '\n';
-                break;
-            }
-            line.append(next);
-        }
-        return line.toString();
-    }
-
-    private static int parseHeader(String header) {
-        var contentLength = "Content-Length: ";
-        if (header.startsWith(contentLength)) {
-            var tail = header.substring(contentLength.length());
-            var length = Integer.parseInt(tail);
-            return length;
-        }
-        return -1;
-    }
-
-    private static char read(InputStream client) {
-        try {
-            var c = client.read();
-            if (c == -1) {
-                LOG.warning("Stream from client has been closed, throwing kill exception...");
-                throw new EndOfStream(); // TODO this is showing an error?
-            }
-            return (char) c;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String readLength(InputStream client, int byteLength) {
-        // Eat whitespace
-        try {
-            return new String(client.readNBytes(byteLength), StandardCharsets.UTF_8).stripLeading();
-        } catch (IOException e) {
-            throw new RuntimeException("An error occurred during the reading of client data", e);
-        }
-    }
-
-    static String nextToken(InputStream client) {
-        var contentLength = -1;
-        while (true) {
-            var line = readHeader(client);
-            // If header is empty, next line is the start of the message
-            if (line.isEmpty()) return readLength(client, contentLength);
-            // If header contains length, save it
-            var maybeLength = parseHeader(line);
-            if (maybeLength != -1) contentLength = maybeLength;
-        }
-    }
-
-    static JsonObject parseMessage(String token) {
-        return gson.fromJson(token, JsonObject.class);
+    static JsonObject parseMessage(Reader payload) {
+        return gson.fromJson(payload, JsonObject.class);
     }
 
     static String toJson(Object message) {
         return gson.toJson(message);
     }
 
-    private static final Charset UTF_8 = StandardCharsets.UTF_8;
-
     private void send(ProtocolMessage message) {
-        var jsonText = toJson(message);
-        // if (!(message instanceof OutputEvent)) {
-        //     LOG.info(jsonText);
-        // }
-        var messageBytes = jsonText.getBytes(UTF_8);
-        var headerText = String.format("Content-Length: %d\r\n\r\n", messageBytes.length);
-        var headerBytes = headerText.getBytes(UTF_8);
-        try {
-            send.write(headerBytes);
-            send.write(messageBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        MessageOutput.write(send, gson, "", message, "");
     }
 
     private static final JsonObject END_OF_STREAM = new JsonObject();
@@ -187,10 +116,15 @@ public class DebugAdapter {
         public void run() {
             LOG.info("Placing incoming messages on queue...");
 
+            var input = new MessageInput(receive);
             while (true) {
                 try {
-                    var token = nextToken(receive);
-                    var json = parseMessage(token);
+                    var payload = input.next();
+                    if (payload == null) {
+                        LOG.warning("Stream from client has been closed, throwing kill exception...");
+                        throw new EndOfStream();
+                    }
+                    var json = parseMessage(payload);
                     var msg = gson.fromJson(json, ProtocolMessage.class);
                     switch (msg.type) {
                         case "request":
@@ -0,0 +1,81 @@
+package org.javacs.hover;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.tools.JavaFileObject;
+
+/**
+ * DocCache remembers the rendered detail and documentation of declarations, so resolving completion items and hovering
+ * doesn't need to re-parse the declaring file. Entries are keyed by the version of the declaring file, so they expire
+ * when that file is edited.
+ */
+class DocCache {
+    static final int MAX_ENTRIES = 1000;
+
+    static class Key {
+        final String className, memberName;
+        final String[] erasedParameterTypes;
+        final URI source;
+        final long version;
+
+        Key(String className, String memberName, String[] erasedParameterTypes, JavaFileObject source) {
+            this.className = className;
+            this.memberName = memberName;
+            this.erasedParameterTypes = erasedParameterTypes;
+            this.source = source.toUri();
+            this.version = source.getLastModified();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            var that = (Key) other;
+            return Objects.equals(this.className, that.className)
+                    && Objects.equals(this.memberName, that.memberName)
+                    && Arrays.equals(this.erasedParameterTypes, that.erasedParameterTypes)
+                    && Objects.equals(this.source, that.source)
+                    && this.version == that.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(className, memberName, Arrays.hashCode(erasedParameterTypes), source, version);
+        }
+    }
+
+    static class Value {
+        /** detail is the signature of a method, or null for other kinds of declarations */
+        final String detail;
+        /** markdown is the doc comment, or "" if there isn't one */
+        final String markdown;
+
+        Value(String detail, String markdown) {
+            this.detail = detail;
+            this.markdown = markdown;
+        }
+    }
+
+    // Least-recently-used entries are evicted first
+    private static final Map<Key, Value> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    static synchronized Value get(Key key) {
+        return cache.get(key);
+    }
+
+    static synchronized void put(Key key, Value value) {
+        cache.put(key, value);
+    }
+
+    static synchronized int size() {
+        return cache.size();
+    }
+}
@@ -18,6 +18,8 @@ import org.javacs.MarkdownHelper;
 import org.javacs.ParseTask;
 import org.javacs.lsp.CompletionItem;
 import org.javacs.lsp.MarkedString;
+import org.javacs.lsp.MarkupContent;
+import org.javacs.lsp.MarkupKind;
 
 public class HoverProvider {
     final CompilerProvider compiler;
@@ -29,7 +31,7 @@ public class HoverProvider {
     }
 
     public List<MarkedString> hover(Path file, int line, int column) {
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compilePruned(file, line, column)) {
             var position = task.root().getLineMap().getPosition(line, column);
             var element = new FindHoverElement(task.task).scan(task.root(), position);
             if (element == null) return NOT_SUPPORTED;
@@ -47,84 +49,94 @@ public class HoverProvider {
     public void resolveCompletionItem(CompletionItem item) {
         if (item.data == null || item.data == JsonNull.INSTANCE) return;
         var data = JsonHelper.GSON.fromJson(item.data, CompletionData.class);
-        var source = compiler.findAnywhere(data.className);
-        if (source.isEmpty()) return;
+        var resolved = resolve(data.className, data.memberName, data.erasedParameterTypes);
+        if (resolved == null) return;
+        if (resolved.detail != null) {
+            item.detail = resolved.detail;
+            if (data.plusOverloads != 0) {
+                item.detail += " (+" + data.plusOverloads + " overloads)";
+            }
+        }
+        if (!resolved.markdown.isEmpty()) {
+            item.documentation = new MarkupContent(MarkupKind.Markdown, resolved.markdown);
+        }
+    }
+
+    /** Resolve the docs of items ahead of time, so resolveCompletionItem hits the cache */
+    public void prefetch(List<CompletionItem> items) {
+        for (var item : items) {
+            if (item.data == null || item.data == JsonNull.INSTANCE) continue;
+            var data = JsonHelper.GSON.fromJson(item.data, CompletionData.class);
+            resolve(data.className, data.memberName, data.erasedParameterTypes);
+        }
+    }
+
+    private DocCache.Value resolve(String className, String memberName, String[] erasedParameterTypes) {
+        if (className == null) throw new RuntimeException("no className");
+        var source = compiler.findAnywhere(className);
+        if (source.isEmpty()) return null;
+        var key = new DocCache.Key(className, memberName, erasedParameterTypes, source.get());
+        var cached = DocCache.get(key);
+        if (cached != null) return cached;
         var task = compiler.parse(source.get());
-        var tree = findItem(task, data);
-        resolveDetail(item, data, tree);
-        var path = Trees.instance(task.task).getPath(task.root, tree);
-        var docTree = DocTrees.instance(task.task).getDocCommentTree(path);
-        if (docTree == null) return;
-        item.documentation = MarkdownHelper.asMarkupContent(docTree);
+        var tree = findItem(task, className, memberName, erasedParameterTypes);
+        var value = new DocCache.Value(detail(tree), docs(task, tree));
+        DocCache.put(key, value);
+        return value;
     }
 
     // TODO consider showing actual source code instead of just types and names
-    private void resolveDetail(CompletionItem item, CompletionData data, Tree tree) {
-        if (tree instanceof MethodTree) {
-            var method = (MethodTree) tree;
-            var parameters = new StringJoiner(", ");
-            for (var p : method.getParameters()) {
-                parameters.add(p.getType() + " " + p.getName());
-            }
-            item.detail = method.getReturnType() + " " + method.getName() + "(" + parameters + ")";
-            if (!method.getThrows().isEmpty()) {
-                var exceptions = new StringJoiner(", ");
-                for (var e : method.getThrows()) {
-                    exceptions.add(e.toString());
-                }
-                item.detail += " throws " + exceptions;
-            }
-            if (data.plusOverloads != 0) {
-                item.detail += " (+" + data.plusOverloads + " overloads)";
+    private String detail(Tree tree) {
+        if (!(tree instanceof MethodTree)) return null;
+        var method = (MethodTree) tree;
+        var parameters = new StringJoiner(", ");
+        for (var p : method.getParameters()) {
+            parameters.add(p.getType() + " " + p.getName());
+        }
+        var detail = method.getReturnType() + " " + method.getName() + "(" + parameters + ")";
+        if (!method.getThrows().isEmpty()) {
+            var exceptions = new StringJoiner(", ");
+            for (var e : method.getThrows()) {
+                exceptions.add(e.toString());
             }
+            detail += " throws " + exceptions;
         }
+        return detail;
     }
 
-    private Tree findItem(ParseTask task, CompletionData data) {
-        if (data.erasedParameterTypes != null) {
-            return FindHelper.findMethod(task, data.className, data.memberName, data.erasedParameterTypes);
-        }
-        if (data.memberName != null) {
-            return FindHelper.findField(task, data.className, data.memberName);
+    private Tree findItem(ParseTask task, String className, String memberName, String[] erasedParameterTypes) {
+        if (erasedParameterTypes != null) {
+            return FindHelper.findMethod(task, className, memberName, erasedParameterTypes);
         }
-        if (data.className != null) {
-            return FindHelper.findType(task, data.className);
+        if (memberName != null) {
+            return FindHelper.findField(task, className, memberName);
         }
-        throw new RuntimeException("no className");
+        return FindHelper.findType(task, className);
     }
 
     private String docs(CompileTask task, Element element) {
+        DocCache.Value resolved;
         if (element instanceof TypeElement) {
             var type = (TypeElement) element;
             var className = type.getQualifiedName().toString();
-            var file = compiler.findAnywhere(className);
-            if (file.isEmpty()) return "";
-            var parse = compiler.parse(file.get());
-            var tree = FindHelper.findType(parse, className);
-            return docs(parse, tree);
+            resolved = resolve(className, null, null);
         } else if (element.getKind() == ElementKind.FIELD) {
             var field = (VariableElement) element;
             var type = (TypeElement) field.getEnclosingElement();
             var className = type.getQualifiedName().toString();
-            var file = compiler.findAnywhere(className);
-            if (file.isEmpty()) return "";
-            var parse = compiler.parse(file.get());
-            var tree = FindHelper.findType(parse, className);
-            return docs(parse, tree);
+            resolved = resolve(className, null, null);
         } else if (element instanceof ExecutableElement) {
             var method = (ExecutableElement) element;
             var type = (TypeElement) method.getEnclosingElement();
             var className = type.getQualifiedName().toString();
             var methodName = method.getSimpleName().toString();
             var erasedParameterTypes = FindHelper.erasedParameterTypes(task, method);
-            var file = compiler.findAnywhere(className);
-            if (file.isEmpty()) return "";
-            var parse = compiler.parse(file.get());
-            var tree = FindHelper.findMethod(parse, className, methodName, erasedParameterTypes);
-            return docs(parse, tree);
+            resolved = resolve(className, methodName, erasedParameterTypes);
         } else {
             return "";
         }
+        if (resolved == null) return "";
+        return resolved.markdown;
     }
 
     private String docs(ParseTask task, Tree tree) {
@@ -0,0 +1,36 @@
+package org.javacs.lsp;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * CancelToken is how long-running requests notice that the client has sent `$/cancelRequest`. They should call
+ * checkCancelled() between steps; LSP.connect replies RequestCancelled when it throws.
+ */
+public class CancelToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    private static final ThreadLocal<CancelToken> current = ThreadLocal.withInitial(CancelToken::new);
+
+    /** The token of the request that is running on this thread */
+    public static CancelToken current() {
+        return current.get();
+    }
+
+    static void setCurrent(CancelToken token) {
+        current.set(token);
+    }
+}
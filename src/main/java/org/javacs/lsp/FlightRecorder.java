@@ -0,0 +1,55 @@
+package org.javacs.lsp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Logger;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * FlightRecorder starts and stops a JDK Flight Recorder recording, so when the server freezes, one .jfr file shows
+ * whether it was waiting on javac, the disk, a build tool or the garbage collector.
+ */
+public class FlightRecorder {
+    private static Recording recording;
+
+    public static synchronized void start() {
+        if (recording != null) {
+            LOG.warning("Already recording");
+            return;
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration("profile"));
+        } catch (IOException | ParseException e) {
+            throw new RuntimeException(e);
+        }
+        recording.setName("java-language-server");
+        recording.start();
+        LOG.info("Started flight recording");
+    }
+
+    /** Stop recording and write the recording to a file in the temp directory */
+    public static synchronized Path stop() {
+        if (recording == null) {
+            throw new IllegalStateException("Not recording");
+        }
+        var time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        var file = Paths.get(System.getProperty("java.io.tmpdir"), "java-language-server-" + time + ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            recording.close();
+            recording = null;
+        }
+        LOG.info("Saved flight recording to " + file);
+        return file;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
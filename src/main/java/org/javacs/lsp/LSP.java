@@ -1,98 +1,36 @@
 package org.javacs.lsp;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class LSP {
-    private static final Gson gson = new Gson();
-
-    private static String readHeader(InputStream client) {
-        var line = new StringBuilder();
-        for (var next = read(client); true; next = read(client)) {
-            if (next == '\r') {
-                var last = read(client);
-                assert last == '\n';
-                break;
-            }
-            line.append(next);
-        }
-        return line.toString();
-    }
-
-    private static int parseHeader(String header) {
-        var contentLength = "Content-Length: ";
-        if (header.startsWith(contentLength)) {
-            var tail = header.substring(contentLength.length());
-            var length = Integer.parseInt(tail);
-            return length;
-        }
-        return -1;
-    }
+    private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(new ProtocolAdapters()).create();
 
     static class EndOfStream extends RuntimeException {}
 
-    // TODO this seems like it's probably really inefficient. Read in bulk?
-    private static char read(InputStream client) {
-        try {
-            var c = client.read();
-            if (c == -1) {
-                LOG.warning("Stream from client has been closed, throwing kill exception...");
-                throw new EndOfStream();
-            }
-            return (char) c;
-        } catch (IOException e) {
-            LOG.log(Level.SEVERE, e.getMessage(), e);
-            throw new EndOfStream();
-        }
-    }
-
-    private static String readLength(InputStream client, int byteLength) {
-        // Eat whitespace
-        try {
-            return new String(client.readNBytes(byteLength), StandardCharsets.UTF_8).stripLeading();
-        } catch (IOException e) {
-            throw new RuntimeException("An error occurred during the reading of client data", e);
-        }
-    }
-
-    static String nextToken(InputStream client) {
-        var contentLength = -1;
-        while (true) {
-            var line = readHeader(client);
-            // If header is empty, next line is the start of the message
-            if (line.isEmpty()) return readLength(client, contentLength);
-            // If header contains length, save it
-            var maybeLength = parseHeader(line);
-            if (maybeLength != -1) contentLength = maybeLength;
-        }
-    }
-
-    static Message parseMessage(String token) {
-        return gson.fromJson(token, Message.class);
-    }
-
-    private static final Charset UTF_8 = StandardCharsets.UTF_8;
-
-    private static void writeClient(OutputStream client, String messageText) {
-        var messageBytes = messageText.getBytes(UTF_8);
-        var headerText = String.format("Content-Length: %d\r\n\r\n", messageBytes.length);
-        var headerBytes = headerText.getBytes(UTF_8);
-        try {
-            client.write(headerBytes);
-            client.write(messageBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    static Message parseMessage(Reader payload) {
+        return gson.fromJson(payload, Message.class);
     }
 
     static String toJson(Object message) {
@@ -100,7 +38,7 @@ public class LSP {
     }
 
     @SuppressWarnings("unchecked")
-    static void respond(OutputStream client, int requestId, Object params) {
+    static int respond(OutputStream client, int requestId, Object params) {
         if (params instanceof ResponseError) {
             throw new RuntimeException("Errors should be sent using LSP.error(...)");
         }
@@ -108,15 +46,13 @@ public class LSP {
             var option = (Optional) params;
             params = option.orElse(null);
         }
-        var jsonText = toJson(params);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"id\":%d,\"result\":%s}", requestId, jsonText);
-        writeClient(client, messageText);
+        var prefix = "{\"jsonrpc\":\"2.0\",\"id\":" + requestId + ",\"result\":";
+        return MessageOutput.write(client, gson, prefix, params, "}");
     }
 
-    static void error(OutputStream client, int requestId, ResponseError error) {
-        var jsonText = toJson(error);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"id\":%d,\"error\":%s}", requestId, jsonText);
-        writeClient(client, messageText);
+    static int error(OutputStream client, int requestId, ResponseError error) {
+        var prefix = "{\"jsonrpc\":\"2.0\",\"id\":" + requestId + ",\"error\":";
+        return MessageOutput.write(client, gson, prefix, error, "}");
     }
 
     @SuppressWarnings("unchecked")
@@ -125,9 +61,8 @@ public class LSP {
             var option = (Optional) params;
             params = option.orElse(null);
         }
-        var jsonText = toJson(params);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"method\":\"%s\",\"params\":%s}", method, jsonText);
-        writeClient(client, messageText);
+        var prefix = "{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\",\"params\":";
+        MessageOutput.write(client, gson, prefix, params, "}");
     }
 
     private static class RealClient implements LanguageClient {
@@ -166,8 +101,12 @@ public class LSP {
     public static void connect(
             Function<LanguageClient, LanguageServer> serverFactory, InputStream receive, OutputStream send) {
         var server = serverFactory.apply(new RealClient(send));
-        var pending = new ArrayBlockingQueue<Message>(10);
+        // didChange notifications are coalesced and stale requests dropped, so the queue only grows when the main
+        // thread is busy with something slow; the limit just stops a runaway client from using unbounded memory
+        var pending = new LinkedBlockingDeque<Message>(MAX_PENDING);
         var endOfStream = new Message();
+        // Requests that have started, so the reader thread can cancel them
+        var running = new ConcurrentHashMap<Integer, Running>();
 
         // Read messages and process cancellations on a separate thread
         class MessageReader implements Runnable {
@@ -175,11 +114,58 @@ public class LSP {
                 if (message.method.equals("$/cancelRequest")) {
                     var params = gson.fromJson(message.params, CancelParams.class);
                     var removed = pending.removeIf(r -> r.id != null && r.id.equals(params.id));
-                    if (removed) LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
-                    else LOG.info(String.format("Cannot cancel request %d because it has already started", params.id));
+                    if (removed) {
+                        LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
+                        return;
+                    }
+                    var request = running.get(params.id);
+                    if (request != null) {
+                        LOG.info(String.format("Asking running request %d to stop", params.id));
+                        request.token.cancel();
+                    } else {
+                        LOG.info(String.format("Cannot cancel request %d because it has already finished", params.id));
+                    }
                 }
             }
 
+            /** Add a message to the queue, merging it with the previous message if both edit the same document */
+            void enqueue(Message message) throws InterruptedException {
+                if (!message.method.equals("textDocument/didChange")) {
+                    pending.putLast(message);
+                    return;
+                }
+                var document = document(message);
+                var stale = removeStale(document);
+                // The reader is the only thread that adds messages, so nothing can sneak in after `last`
+                var last = pending.pollLast();
+                if (last == null) {
+                    pending.putLast(message);
+                } else if (last.method.equals("textDocument/didChange") && document(last).equals(document)) {
+                    pending.putLast(coalesce(last, message));
+                } else {
+                    pending.putLast(last);
+                    pending.putLast(message);
+                }
+                for (var id : stale) {
+                    LOG.info(String.format("Dropped request %d because its document has changed", id));
+                    error(send, id, new ResponseError(ErrorCodes.ContentModified, "Content modified", null));
+                }
+            }
+
+            /** Requests about `document` that haven't started yet would answer questions about an old version */
+            List<Integer> removeStale(String document) {
+                var stale = new ArrayList<Integer>();
+                pending.removeIf(
+                        r -> {
+                            if (r.id == null || !READ_ONLY.contains(r.method) || !document(r).equals(document)) {
+                                return false;
+                            }
+                            stale.add(r.id);
+                            return true;
+                        });
+                return stale;
+            }
+
             private boolean kill() {
                 LOG.info("Read stream has been closed, putting kill message onto queue...");
                 try {
@@ -195,12 +181,21 @@ public class LSP {
             public void run() {
                 LOG.info("Placing incoming messages on queue...");
 
+                var input = new MessageInput(receive);
                 while (true) {
                     try {
-                        var token = nextToken(receive);
-                        var message = parseMessage(token);
+                        var payload = input.next();
+                        if (payload == null) {
+                            LOG.warning("Stream from client has been closed, throwing kill exception...");
+                            throw new EndOfStream();
+                        }
+                        var message = parseMessage(payload);
+                        message.received = System.nanoTime();
+                        if (recorder != null) {
+                            recorder.record(message);
+                        }
                         peek(message);
-                        pending.put(message);
+                        enqueue(message);
                     } catch (EndOfStream __) {
                         if (kill()) return;
                     } catch (Exception e) {
@@ -213,10 +208,12 @@ public class LSP {
         reader.setDaemon(true);
         reader.start();
 
-        // Process messages on main thread
+        // Process messages on main thread, except read-only requests, which run on the workers
         LOG.info("Reading messages from queue...");
+        var workers = Executors.newFixedThreadPool(WORKERS, LSP::workerThread);
+        // The last read-only request for each document, so requests for the same document run in order
+        var queues = new HashMap<String, CompletableFuture<Void>>();
         var hasAsyncWork = false;
-        processMessages:
         while (true) {
             Message r;
             try {
@@ -229,223 +226,413 @@ public class LSP {
             // If receive has been closed, exit
             if (r == endOfStream) {
                 LOG.warning("Stream from client has been closed, exiting...");
-                break processMessages;
+                break;
             }
             // If poll(_) failed, loop again
             if (r == null) {
-                if (hasAsyncWork) {
+                // Wait until the workers are idle too, rather than blocking edits behind a slow request
+                if (hasAsyncWork && allDone(queues)) {
+                    queues.clear();
                     server.doAsyncWork();
                     hasAsyncWork = false;
                 }
                 continue;
             }
+            // Messages that don't change the state of the server don't wait for the workers, so a cancel or an unrelated
+            // notification isn't stuck behind the request it has nothing to do with
+            if (isStateless(r)) {
+                handle(server, send, r, new CancelToken(), running);
+                continue;
+            }
             // Otherwise, process the new message
             hasAsyncWork = true;
-            try {
-                switch (r.method) {
-                    case "initialize":
-                        {
-                            var params = gson.fromJson(r.params, InitializeParams.class);
-                            var response = server.initialize(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "initialized":
-                        {
-                            server.initialized();
-                            break;
-                        }
-                    case "shutdown":
-                        {
-                            LOG.warning("Got shutdown message");
-                            respond(send, r.id, null);
-                            break;
-                        }
-                    case "exit":
-                        {
-                            LOG.warning("Got exit message, exiting...");
-                            break processMessages;
-                        }
-                    case "workspace/didChangeWorkspaceFolders":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
-                            server.didChangeWorkspaceFolders(params);
-                            break;
-                        }
-                    case "workspace/didChangeConfiguration":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
-                            server.didChangeConfiguration(params);
-                            break;
-                        }
-                    case "workspace/didChangeWatchedFiles":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
-                            server.didChangeWatchedFiles(params);
-                            break;
-                        }
-                    case "workspace/symbol":
-                        {
-                            var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
-                            var response = server.workspaceSymbols(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentLink":
-                        {
-                            var params = gson.fromJson(r.params, DocumentLinkParams.class);
-                            var response = server.documentLink(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didOpen":
-                        {
-                            var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
-                            server.didOpenTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didChange":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
-                            server.didChangeTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSave":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            server.willSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSaveWaitUntil":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            var response = server.willSaveWaitUntilTextDocument(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didSave":
-                        {
-                            var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
-                            server.didSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didClose":
-                        {
-                            var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
-                            server.didCloseTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/completion":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.completion(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "completionItem/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CompletionItem.class);
-                            var response = server.resolveCompletionItem(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/hover":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.hover(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/signatureHelp":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.signatureHelp(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/definition":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.gotoDefinition(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/references":
-                        {
-                            var params = gson.fromJson(r.params, ReferenceParams.class);
-                            var response = server.findReferences(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentSymbol":
-                        {
-                            var params = gson.fromJson(r.params, DocumentSymbolParams.class);
-                            var response = server.documentSymbol(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeAction":
-                        {
-                            var params = gson.fromJson(r.params, CodeActionParams.class);
-                            var response = server.codeAction(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeLens":
-                        {
-                            var params = gson.fromJson(r.params, CodeLensParams.class);
-                            var response = server.codeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "codeLens/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CodeLens.class);
-                            var response = server.resolveCodeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/prepareRename":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.prepareRename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/rename":
-                        {
-                            var params = gson.fromJson(r.params, RenameParams.class);
-                            var response = server.rename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/formatting":
-                        {
-                            var params = gson.fromJson(r.params, DocumentFormattingParams.class);
-                            var response = server.formatting(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/foldingRange":
-                        {
-                            var params = gson.fromJson(r.params, FoldingRangeParams.class);
-                            var response = server.foldingRange(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "$/cancelRequest":
-                        // Already handled in peek(message)
-                        break;
-                    default:
-                        LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
-                }
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, e.getMessage(), e);
-                if (r.id != null) {
-                    error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
+            var document = document(r);
+            var token = new CancelToken();
+            if (r.id != null) {
+                running.put(r.id, new Running(document, token));
+            }
+            if (r.id != null && READ_ONLY.contains(r.method)) {
+                var previous = queues.getOrDefault(document, CompletableFuture.completedFuture(null));
+                var next = previous.thenRunAsync(() -> handle(server, send, r, token, running), workers);
+                queues.put(document, next);
+                continue;
+            }
+            // An edit makes the answers to earlier requests about the same document stale
+            if (r.method.equals("textDocument/didChange") || r.method.equals("textDocument/didClose")) {
+                for (var other : running.values()) {
+                    if (other.document.equals(document)) {
+                        other.token.cancel();
+                    }
                 }
             }
+            // Everything else changes the state of the server, so it waits for the workers to finish
+            awaitAll(queues);
+            if (handle(server, send, r, token, running)) break;
+        }
+        workers.shutdownNow();
+    }
+
+    /** Requests that don't change the state of the server, so they can run at the same time as each other */
+    private static final Set<String> READ_ONLY =
+            Set.of(
+                    "textDocument/completion",
+                    "completionItem/resolve",
+                    "textDocument/hover",
+                    "textDocument/signatureHelp",
+                    "textDocument/definition",
+                    "textDocument/references",
+                    "textDocument/documentSymbol",
+                    "textDocument/codeAction",
+                    "textDocument/codeLens",
+                    "codeLens/resolve",
+                    "textDocument/documentLink",
+                    "textDocument/foldingRange",
+                    "textDocument/prepareRename",
+                    "workspace/symbol");
+
+    /** Messages that handle answers without touching the server */
+    private static final Set<String> STATELESS = Set.of("textDocument/willSave", "java/metrics");
+
+    private static boolean isStateless(Message r) {
+        // $/cancelRequest is handled in peek(message), and other $/ notifications are ignored
+        return r.method.startsWith("$/") || STATELESS.contains(r.method);
+    }
+
+    private static SessionRecorder recorder;
+
+    /** Record every message the client sends to `file`, so the session can be replayed */
+    public static void recordTo(Path file) {
+        recorder = new SessionRecorder(file);
+    }
+
+    /** Handle a recorded message on the calling thread, writing any response to `send` */
+    public static void replay(LanguageServer server, OutputStream send, Message message) {
+        // Replayed messages don't wait in a queue
+        message.received = System.nanoTime();
+        handle(server, send, message, new CancelToken(), new ConcurrentHashMap<>());
+    }
+
+    private static final Metrics METRICS = new Metrics();
+
+    /** Latency and size of the messages handled so far, by method */
+    public static Metrics metrics() {
+        return METRICS;
+    }
+
+    private static final int MAX_PENDING = 1000;
+
+    /** Merge two consecutive didChange notifications for the same document into one */
+    private static Message coalesce(Message first, Message second) {
+        var changes = new JsonArray();
+        changes.addAll(first.params.getAsJsonObject().getAsJsonArray("contentChanges"));
+        changes.addAll(second.params.getAsJsonObject().getAsJsonArray("contentChanges"));
+        var params = new JsonObject();
+        params.add("textDocument", second.params.getAsJsonObject().get("textDocument"));
+        params.add("contentChanges", changes);
+        var merged = new Message();
+        merged.jsonrpc = second.jsonrpc;
+        merged.method = second.method;
+        merged.params = params;
+        merged.received = first.received;
+        return merged;
+    }
+
+    private static final int WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private static Thread workerThread(Runnable task) {
+        var thread = new Thread(task, "worker");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /** A request that has started, so it can be cancelled by the client, or by an edit to its document */
+    private static class Running {
+        final String document;
+        final CancelToken token;
+
+        Running(String document, CancelToken token) {
+            this.document = document;
+            this.token = token;
+        }
+    }
+
+    /** The uri of the document a message is about, or "" if it isn't about a particular document */
+    private static String document(Message r) {
+        if (r.params == null || !r.params.isJsonObject()) return "";
+        var textDocument = r.params.getAsJsonObject().get("textDocument");
+        if (textDocument == null || !textDocument.isJsonObject()) return "";
+        var uri = textDocument.getAsJsonObject().get("uri");
+        if (uri == null || !uri.isJsonPrimitive()) return "";
+        return uri.getAsString();
+    }
+
+    private static boolean allDone(Map<String, CompletableFuture<Void>> queues) {
+        for (var queue : queues.values()) {
+            if (!queue.isDone()) return false;
+        }
+        return true;
+    }
+
+    private static void awaitAll(Map<String, CompletableFuture<Void>> queues) {
+        if (queues.isEmpty()) return;
+        CompletableFuture.allOf(queues.values().toArray(CompletableFuture[]::new)).join();
+        queues.clear();
+    }
+
+    /** Handle one message, and return true if the server should exit */
+    private static boolean handle(
+            LanguageServer server, OutputStream send, Message r, CancelToken token, Map<Integer, Running> running) {
+        CancelToken.setCurrent(token);
+        var event = new RequestEvent();
+        event.begin();
+        var started = System.nanoTime();
+        var responseBytes = -1;
+        var failed = false;
+        try {
+            // The request may have been cancelled while it was waiting for a worker
+            token.checkCancelled();
+            switch (r.method) {
+                case "initialize":
+                    {
+                        var params = gson.fromJson(r.params, InitializeParams.class);
+                        var response = server.initialize(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "initialized":
+                    {
+                        server.initialized();
+                        break;
+                    }
+                case "shutdown":
+                    {
+                        LOG.warning("Got shutdown message");
+                        responseBytes = respond(send, r.id, null);
+                        break;
+                    }
+                case "exit":
+                    {
+                        LOG.warning("Got exit message, exiting...");
+                        return true;
+                    }
+                case "workspace/didChangeWorkspaceFolders":
+                    {
+                        var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
+                        server.didChangeWorkspaceFolders(params);
+                        break;
+                    }
+                case "workspace/didChangeConfiguration":
+                    {
+                        var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
+                        server.didChangeConfiguration(params);
+                        break;
+                    }
+                case "workspace/didChangeWatchedFiles":
+                    {
+                        var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
+                        server.didChangeWatchedFiles(params);
+                        break;
+                    }
+                case "workspace/symbol":
+                    {
+                        var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
+                        var response = server.workspaceSymbols(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/documentLink":
+                    {
+                        var params = gson.fromJson(r.params, DocumentLinkParams.class);
+                        var response = server.documentLink(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/didOpen":
+                    {
+                        var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
+                        server.didOpenTextDocument(params);
+                        break;
+                    }
+                case "textDocument/didChange":
+                    {
+                        var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
+                        server.didChangeTextDocument(params);
+                        break;
+                    }
+                case "textDocument/willSave":
+                    {
+                        var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                        server.willSaveTextDocument(params);
+                        break;
+                    }
+                case "textDocument/willSaveWaitUntil":
+                    {
+                        var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                        var response = server.willSaveWaitUntilTextDocument(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/didSave":
+                    {
+                        var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
+                        server.didSaveTextDocument(params);
+                        break;
+                    }
+                case "textDocument/didClose":
+                    {
+                        var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
+                        server.didCloseTextDocument(params);
+                        break;
+                    }
+                case "textDocument/completion":
+                    {
+                        var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                        var response = server.completion(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "completionItem/resolve":
+                    {
+                        var params = gson.fromJson(r.params, CompletionItem.class);
+                        var response = server.resolveCompletionItem(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/hover":
+                    {
+                        var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                        var response = server.hover(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/signatureHelp":
+                    {
+                        var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                        var response = server.signatureHelp(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/definition":
+                    {
+                        var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                        var response = server.gotoDefinition(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/references":
+                    {
+                        var params = gson.fromJson(r.params, ReferenceParams.class);
+                        var response = server.findReferences(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/documentSymbol":
+                    {
+                        var params = gson.fromJson(r.params, DocumentSymbolParams.class);
+                        var response = server.documentSymbol(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/codeAction":
+                    {
+                        var params = gson.fromJson(r.params, CodeActionParams.class);
+                        var response = server.codeAction(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/codeLens":
+                    {
+                        var params = gson.fromJson(r.params, CodeLensParams.class);
+                        var response = server.codeLens(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "codeLens/resolve":
+                    {
+                        var params = gson.fromJson(r.params, CodeLens.class);
+                        var response = server.resolveCodeLens(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/prepareRename":
+                    {
+                        var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                        var response = server.prepareRename(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/rename":
+                    {
+                        var params = gson.fromJson(r.params, RenameParams.class);
+                        var response = server.rename(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/formatting":
+                    {
+                        var params = gson.fromJson(r.params, DocumentFormattingParams.class);
+                        var response = server.formatting(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "textDocument/foldingRange":
+                    {
+                        var params = gson.fromJson(r.params, FoldingRangeParams.class);
+                        var response = server.foldingRange(params);
+                        responseBytes = respond(send, r.id, response);
+                        break;
+                    }
+                case "java/metrics":
+                    {
+                        responseBytes = respond(send, r.id, METRICS.snapshot());
+                        break;
+                    }
+                case "java/startRecording":
+                    {
+                        FlightRecorder.start();
+                        responseBytes = respond(send, r.id, null);
+                        break;
+                    }
+                case "java/stopRecording":
+                    {
+                        var file = FlightRecorder.stop();
+                        responseBytes = respond(send, r.id, file.toString());
+                        break;
+                    }
+                case "$/cancelRequest":
+                    // Already handled in peek(message)
+                    break;
+                default:
+                    LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
+            }
+        } catch (CancellationException e) {
+            LOG.info(String.format("Request %d was cancelled", r.id));
+            failed = true;
+            if (r.id != null) {
+                responseBytes = error(send, r.id, new ResponseError(ErrorCodes.RequestCancelled, "Cancelled", null));
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            failed = true;
+            if (r.id != null) {
+                responseBytes = error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
+            }
+        } finally {
+            METRICS.record(r.method, started - r.received, System.nanoTime() - started, responseBytes, failed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = r.method;
+                event.id = r.id == null ? -1 : r.id;
+                event.queued = started - r.received;
+                event.responseBytes = responseBytes;
+                event.failed = failed;
+                event.commit();
+            }
+            if (r.id != null) {
+                running.remove(r.id);
+            }
         }
+        return false;
     }
 
     private static final Logger LOG = Logger.getLogger("main");
@@ -7,4 +7,6 @@ public class Message {
     public Integer id;
     public String method;
     public JsonElement params;
+    /** System.nanoTime() when the reader received this message */
+    transient long received;
 }
@@ -0,0 +1,126 @@
+package org.javacs.lsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MessageInput splits a stream into `Content-Length` framed messages. Headers are scanned in bulk from a buffer, and
+ * the payload is handed to the JSON parser as a Reader over the bytes, without copying it into a String. The payload
+ * buffer is reused, so each message must be parsed before the next one is read.
+ */
+public class MessageInput {
+    private final InputStream in;
+    private byte[] buffer = new byte[8 * 1024];
+    /** Bytes read from `in` but not yet consumed are buffer[start, end) */
+    private int start, end;
+
+    private byte[] payload = new byte[8 * 1024];
+
+    public MessageInput(InputStream in) {
+        this.in = in;
+    }
+
+    /** Read the next message, or return null if the stream has ended */
+    public Reader next() {
+        var contentLength = -1;
+        while (true) {
+            var lineEnd = findLineEnd();
+            if (lineEnd == -1) return null;
+            var lineStart = start;
+            start = lineEnd + 2;
+            // If header is empty, the payload comes next
+            if (lineEnd == lineStart) break;
+            var maybeLength = parseContentLength(lineStart, lineEnd);
+            if (maybeLength != -1) contentLength = maybeLength;
+        }
+        if (contentLength == -1) {
+            throw new RuntimeException("Message has no Content-Length header");
+        }
+        if (!readPayload(contentLength)) return null;
+        return new InputStreamReader(new ByteArrayInputStream(payload, 0, contentLength), StandardCharsets.UTF_8);
+    }
+
+    /** Find the `\r\n` at the end of the next header line, reading more of the stream if needed */
+    private int findLineEnd() {
+        var scanned = start;
+        while (true) {
+            for (var i = scanned; i + 1 < end; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') return i;
+            }
+            scanned = Math.max(start, end - 1);
+            var before = start;
+            if (!fill()) return -1;
+            scanned -= before - start;
+        }
+    }
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+    private int parseContentLength(int lineStart, int lineEnd) {
+        if (lineEnd - lineStart < CONTENT_LENGTH.length) return -1;
+        for (var i = 0; i < CONTENT_LENGTH.length; i++) {
+            if (Character.toLowerCase(buffer[lineStart + i]) != CONTENT_LENGTH[i]) return -1;
+        }
+        var length = 0;
+        for (var i = lineStart + CONTENT_LENGTH.length; i < lineEnd; i++) {
+            var c = buffer[i];
+            if (c == ' ') continue;
+            if (c < '0' || c > '9') {
+                throw new RuntimeException("Bad Content-Length header");
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length;
+    }
+
+    /** Read the payload into `payload`, starting with whatever is already buffered */
+    private boolean readPayload(int length) {
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        var buffered = Math.min(length, end - start);
+        System.arraycopy(buffer, start, payload, 0, buffered);
+        start += buffered;
+        try {
+            var read = in.readNBytes(payload, buffered, length - buffered);
+            if (buffered + read < length) {
+                LOG.warning("Stream from client has been closed in the middle of a message");
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /** Read more of the stream into buffer, moving or growing it to make room */
+    private boolean fill() {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            var read = in.read(buffer, end, buffer.length - end);
+            if (read == -1) return false;
+            end += read;
+            return true;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,69 @@
+package org.javacs.lsp;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MessageOutput writes `Content-Length` framed messages. The JSON is serialized straight into a reused buffer, leaving
+ * room at the front, and the header is filled in once the length is known, so each message is written with a single
+ * write and without intermediate Strings.
+ */
+public class MessageOutput {
+    /** Room for `Content-Length: ` + 10 digits + `\r\n\r\n` */
+    private static final byte[] HEADER_SPACE = new byte[32];
+
+    /** Buffers that have grown larger than this are dropped after use, so one huge response doesn't stay in memory */
+    private static final int MAX_RETAINED = 1024 * 1024;
+
+    private static class Buffer extends ByteArrayOutputStream {
+        final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+        Buffer() {
+            super(16 * 1024);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    // Responses are written by several threads, so each thread has its own buffer
+    private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+    /** Write `prefix`, then `body` as JSON, then `suffix`, as one message, and return the size of the payload */
+    public static int write(OutputStream out, Gson gson, String prefix, Object body, String suffix) {
+        var buffer = buffers.get();
+        buffer.reset();
+        var finished = false;
+        try {
+            buffer.writeBytes(HEADER_SPACE);
+            buffer.writer.write(prefix);
+            gson.toJson(body, buffer.writer);
+            buffer.writer.write(suffix);
+            buffer.writer.flush();
+            var length = buffer.size() - HEADER_SPACE.length;
+            var header = ("Content-Length: " + length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            var start = HEADER_SPACE.length - header.length;
+            System.arraycopy(header, 0, buffer.bytes(), start, header.length);
+            // Don't interleave messages from different threads
+            synchronized (out) {
+                out.write(buffer.bytes(), start, buffer.size() - start);
+                out.flush();
+            }
+            finished = true;
+            return length;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            // If serialization failed, the writer may still hold part of the message, so start over with a new buffer
+            if (!finished || buffer.bytes().length > MAX_RETAINED) {
+                buffers.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.javacs.lsp;
+
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Metrics records how long each LSP method waits in the queue, how long it takes to handle, and how large its responses
+ * are. Clients can read them with the `java/metrics` request.
+ */
+public class Metrics {
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    private static class MethodMetrics {
+        final AtomicLong count = new AtomicLong(), errors = new AtomicLong();
+        final Histogram queueMicros = new Histogram(), handleMicros = new Histogram(), responseBytes = new Histogram();
+    }
+
+    /** Record one message. `responseBytes` is -1 for notifications, which have no response. */
+    void record(String method, long queueNanos, long handleNanos, int responseBytes, boolean failed) {
+        var m = methods.computeIfAbsent(method, __ -> new MethodMetrics());
+        m.count.incrementAndGet();
+        if (failed) m.errors.incrementAndGet();
+        m.queueMicros.record(queueNanos / 1000);
+        m.handleMicros.record(handleNanos / 1000);
+        if (responseBytes != -1) m.responseBytes.record(responseBytes);
+    }
+
+    public static class MethodSnapshot {
+        public long count, errors;
+        public Percentiles queueMillis, handleMillis, responseBytes;
+    }
+
+    public static class Percentiles {
+        public double p50, p95, p99, max;
+    }
+
+    public Map<String, MethodSnapshot> snapshot() {
+        var snapshot = new TreeMap<String, MethodSnapshot>();
+        for (var entry : methods.entrySet()) {
+            var m = entry.getValue();
+            var s = new MethodSnapshot();
+            s.count = m.count.get();
+            s.errors = m.errors.get();
+            s.queueMillis = m.queueMicros.percentiles(1000);
+            s.handleMillis = m.handleMicros.percentiles(1000);
+            s.responseBytes = m.responseBytes.percentiles(1);
+            snapshot.put(entry.getKey(), s);
+        }
+        return snapshot;
+    }
+
+    /** Write a snapshot to `file` every `period`, replacing the previous one */
+    public void dumpPeriodically(Path file, Duration period) {
+        var gson = new GsonBuilder().setPrettyPrinting().create();
+        var executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        task -> {
+                            var thread = new Thread(task, "metrics");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        Runnable dump =
+                () -> {
+                    try {
+                        Files.writeString(file, gson.toJson(snapshot()));
+                    } catch (IOException e) {
+                        LOG.warning("Failed to write metrics to " + file + ": " + e.getMessage());
+                    }
+                };
+        executor.scheduleAtFixedRate(dump, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        LOG.info("Writing metrics to " + file + " every " + period.toSeconds() + "s");
+    }
+
+    /**
+     * Histogram counts values in logarithmic buckets, 4 per power of 2, so percentiles are accurate to within 20% no
+     * matter how large the values get, using a fixed amount of memory.
+     */
+    static class Histogram {
+        private static final int SUB_BUCKETS = 4, BUCKETS = 64 * SUB_BUCKETS;
+        private final long[] counts = new long[BUCKETS];
+        private long total, max;
+
+        synchronized void record(long value) {
+            counts[bucket(value)]++;
+            total++;
+            max = Math.max(max, value);
+        }
+
+        private static int bucket(long value) {
+            if (value <= 1) return 0;
+            var bucket = (int) (Math.log(value) / Math.log(2) * SUB_BUCKETS);
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        /** The largest value that falls in `bucket` */
+        private static long upperBound(int bucket) {
+            return (long) Math.pow(2, (bucket + 1) / (double) SUB_BUCKETS);
+        }
+
+        synchronized long percentile(double p) {
+            if (total == 0) return 0;
+            var rank = (long) Math.ceil(p * total);
+            var seen = 0L;
+            for (var i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+
+        synchronized Percentiles percentiles(double unit) {
+            var result = new Percentiles();
+            result.p50 = percentile(0.50) / unit;
+            result.p95 = percentile(0.95) / unit;
+            result.p99 = percentile(0.99) / unit;
+            result.max = max / unit;
+            return result;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,14 @@
+package org.javacs.lsp;
+
+import com.google.gson.JsonElement;
+
+public class ProgressParams {
+    public JsonElement token, value;
+
+    public ProgressParams() {}
+
+    public ProgressParams(JsonElement token, JsonElement value) {
+        this.token = token;
+        this.value = value;
+    }
+}
@@ -0,0 +1,477 @@
+package org.javacs.lsp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Hand-written adapters for the protocol types that appear in almost every message, so Gson doesn't have to reflect
+ * over them. They read and write exactly what the reflective adapters would: fields in declaration order, nulls
+ * omitted, unknown fields ignored.
+ */
+class ProtocolAdapters implements TypeAdapterFactory {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        var raw = type.getRawType();
+        if (raw == Message.class) return (TypeAdapter<T>) new MessageAdapter(gson.getAdapter(JsonElement.class));
+        if (raw == Position.class) return (TypeAdapter<T>) POSITION;
+        if (raw == Range.class) return (TypeAdapter<T>) RANGE;
+        if (raw == Location.class) return (TypeAdapter<T>) LOCATION;
+        if (raw == TextEdit.class) return (TypeAdapter<T>) TEXT_EDIT;
+        if (raw == TextDocumentIdentifier.class) return (TypeAdapter<T>) TEXT_DOCUMENT_IDENTIFIER;
+        if (raw == TextDocumentPositionParams.class) return (TypeAdapter<T>) TEXT_DOCUMENT_POSITION;
+        if (raw == Diagnostic.class) return (TypeAdapter<T>) new DiagnosticAdapter(gson).nullSafe();
+        if (raw == CompletionItem.class) return (TypeAdapter<T>) new CompletionItemAdapter(gson).nullSafe();
+        return null;
+    }
+
+    /**
+     * Notifications whose params are never read. Clients write `method` before `params`, so we can skip over the params
+     * instead of building a tree of them.
+     */
+    private static boolean ignoresParams(String method) {
+        switch (method) {
+            case "initialized":
+            case "shutdown":
+            case "exit":
+                return true;
+            case "$/cancelRequest":
+                return false;
+            default:
+                return method.startsWith("$/");
+        }
+    }
+
+    private static class MessageAdapter extends TypeAdapter<Message> {
+        final TypeAdapter<JsonElement> json;
+
+        MessageAdapter(TypeAdapter<JsonElement> json) {
+            this.json = json;
+        }
+
+        @Override
+        public void write(JsonWriter out, Message value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("jsonrpc").value(value.jsonrpc);
+            out.name("id").value(value.id);
+            out.name("method").value(value.method);
+            out.name("params");
+            json.write(out, value.params);
+            out.endObject();
+        }
+
+        @Override
+        public Message read(JsonReader in) throws IOException {
+            var message = new Message();
+            in.beginObject();
+            while (in.hasNext()) {
+                var name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "jsonrpc":
+                        message.jsonrpc = in.nextString();
+                        break;
+                    case "id":
+                        message.id = in.nextInt();
+                        break;
+                    case "method":
+                        message.method = in.nextString();
+                        break;
+                    case "params":
+                        if (message.method != null && ignoresParams(message.method)) {
+                            in.skipValue();
+                        } else {
+                            message.params = json.read(in);
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return message;
+        }
+    }
+
+    private static final TypeAdapter<Position> POSITION =
+            new TypeAdapter<Position>() {
+                @Override
+                public void write(JsonWriter out, Position value) throws IOException {
+                    out.beginObject();
+                    out.name("line").value(value.line);
+                    out.name("character").value(value.character);
+                    out.endObject();
+                }
+
+                @Override
+                public Position read(JsonReader in) throws IOException {
+                    var position = new Position();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        switch (name) {
+                            case "line":
+                                position.line = in.nextInt();
+                                break;
+                            case "character":
+                                position.character = in.nextInt();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return position;
+                }
+            }.nullSafe();
+
+    private static final TypeAdapter<Range> RANGE =
+            new TypeAdapter<Range>() {
+                @Override
+                public void write(JsonWriter out, Range value) throws IOException {
+                    out.beginObject();
+                    out.name("start");
+                    POSITION.write(out, value.start);
+                    out.name("end");
+                    POSITION.write(out, value.end);
+                    out.endObject();
+                }
+
+                @Override
+                public Range read(JsonReader in) throws IOException {
+                    var range = new Range();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        switch (name) {
+                            case "start":
+                                range.start = POSITION.read(in);
+                                break;
+                            case "end":
+                                range.end = POSITION.read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return range;
+                }
+            }.nullSafe();
+
+    private static final TypeAdapter<Location> LOCATION =
+            new TypeAdapter<Location>() {
+                @Override
+                public void write(JsonWriter out, Location value) throws IOException {
+                    out.beginObject();
+                    out.name("uri").value(uri(value.uri));
+                    out.name("range");
+                    RANGE.write(out, value.range);
+                    out.endObject();
+                }
+
+                @Override
+                public Location read(JsonReader in) throws IOException {
+                    var location = new Location();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        switch (name) {
+                            case "uri":
+                                location.uri = URI.create(in.nextString());
+                                break;
+                            case "range":
+                                location.range = RANGE.read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return location;
+                }
+            }.nullSafe();
+
+    private static final TypeAdapter<TextEdit> TEXT_EDIT =
+            new TypeAdapter<TextEdit>() {
+                @Override
+                public void write(JsonWriter out, TextEdit value) throws IOException {
+                    out.beginObject();
+                    out.name("range");
+                    RANGE.write(out, value.range);
+                    out.name("newText").value(value.newText);
+                    out.endObject();
+                }
+
+                @Override
+                public TextEdit read(JsonReader in) throws IOException {
+                    var edit = new TextEdit();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        switch (name) {
+                            case "range":
+                                edit.range = RANGE.read(in);
+                                break;
+                            case "newText":
+                                edit.newText = in.nextString();
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return edit;
+                }
+            }.nullSafe();
+
+    private static final TypeAdapter<TextDocumentIdentifier> TEXT_DOCUMENT_IDENTIFIER =
+            new TypeAdapter<TextDocumentIdentifier>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentIdentifier value) throws IOException {
+                    out.beginObject();
+                    out.name("uri").value(uri(value.uri));
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentIdentifier read(JsonReader in) throws IOException {
+                    var document = new TextDocumentIdentifier();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        if (name.equals("uri")) {
+                            document.uri = URI.create(in.nextString());
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return document;
+                }
+            }.nullSafe();
+
+    private static final TypeAdapter<TextDocumentPositionParams> TEXT_DOCUMENT_POSITION =
+            new TypeAdapter<TextDocumentPositionParams>() {
+                @Override
+                public void write(JsonWriter out, TextDocumentPositionParams value) throws IOException {
+                    out.beginObject();
+                    out.name("textDocument");
+                    TEXT_DOCUMENT_IDENTIFIER.write(out, value.textDocument);
+                    out.name("position");
+                    POSITION.write(out, value.position);
+                    out.endObject();
+                }
+
+                @Override
+                public TextDocumentPositionParams read(JsonReader in) throws IOException {
+                    var params = new TextDocumentPositionParams();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        var name = in.nextName();
+                        if (skipNull(in)) continue;
+                        switch (name) {
+                            case "textDocument":
+                                params.textDocument = TEXT_DOCUMENT_IDENTIFIER.read(in);
+                                break;
+                            case "position":
+                                params.position = POSITION.read(in);
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return params;
+                }
+            }.nullSafe();
+
+    private static class DiagnosticAdapter extends TypeAdapter<Diagnostic> {
+        final TypeAdapter<List<Integer>> tags;
+
+        DiagnosticAdapter(Gson gson) {
+            this.tags = gson.getAdapter(new TypeToken<List<Integer>>() {});
+        }
+
+        @Override
+        public void write(JsonWriter out, Diagnostic value) throws IOException {
+            out.beginObject();
+            out.name("range");
+            RANGE.write(out, value.range);
+            out.name("severity").value(value.severity);
+            out.name("code").value(value.code);
+            out.name("source").value(value.source);
+            out.name("message").value(value.message);
+            out.name("tags");
+            tags.write(out, value.tags);
+            out.endObject();
+        }
+
+        @Override
+        public Diagnostic read(JsonReader in) throws IOException {
+            var diagnostic = new Diagnostic();
+            in.beginObject();
+            while (in.hasNext()) {
+                var name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "range":
+                        diagnostic.range = RANGE.read(in);
+                        break;
+                    case "severity":
+                        diagnostic.severity = in.nextInt();
+                        break;
+                    case "code":
+                        diagnostic.code = in.nextString();
+                        break;
+                    case "source":
+                        diagnostic.source = in.nextString();
+                        break;
+                    case "message":
+                        diagnostic.message = in.nextString();
+                        break;
+                    case "tags":
+                        diagnostic.tags = tags.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return diagnostic;
+        }
+    }
+
+    private static class CompletionItemAdapter extends TypeAdapter<CompletionItem> {
+        final TypeAdapter<MarkupContent> markup;
+        final TypeAdapter<List<TextEdit>> edits;
+        final TypeAdapter<List<Character>> characters;
+        final TypeAdapter<Command> command;
+        final TypeAdapter<JsonElement> json;
+
+        CompletionItemAdapter(Gson gson) {
+            this.markup = gson.getAdapter(MarkupContent.class);
+            this.edits = gson.getAdapter(new TypeToken<List<TextEdit>>() {});
+            this.characters = gson.getAdapter(new TypeToken<List<Character>>() {});
+            this.command = gson.getAdapter(Command.class);
+            this.json = gson.getAdapter(JsonElement.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, CompletionItem value) throws IOException {
+            out.beginObject();
+            out.name("label").value(value.label);
+            out.name("kind").value(value.kind);
+            out.name("detail").value(value.detail);
+            out.name("documentation");
+            markup.write(out, value.documentation);
+            out.name("deprecated").value(value.deprecated);
+            out.name("preselect").value(value.preselect);
+            out.name("sortText").value(value.sortText);
+            out.name("filterText").value(value.filterText);
+            out.name("insertText").value(value.insertText);
+            out.name("insertTextFormat").value(value.insertTextFormat);
+            out.name("textEdit");
+            TEXT_EDIT.write(out, value.textEdit);
+            out.name("additionalTextEdits");
+            edits.write(out, value.additionalTextEdits);
+            out.name("commitCharacters");
+            characters.write(out, value.commitCharacters);
+            out.name("command");
+            command.write(out, value.command);
+            out.name("data");
+            json.write(out, value.data);
+            out.endObject();
+        }
+
+        @Override
+        public CompletionItem read(JsonReader in) throws IOException {
+            var item = new CompletionItem();
+            in.beginObject();
+            while (in.hasNext()) {
+                var name = in.nextName();
+                if (skipNull(in)) continue;
+                switch (name) {
+                    case "label":
+                        item.label = in.nextString();
+                        break;
+                    case "kind":
+                        item.kind = in.nextInt();
+                        break;
+                    case "detail":
+                        item.detail = in.nextString();
+                        break;
+                    case "documentation":
+                        item.documentation = markup.read(in);
+                        break;
+                    case "deprecated":
+                        item.deprecated = in.nextBoolean();
+                        break;
+                    case "preselect":
+                        item.preselect = in.nextBoolean();
+                        break;
+                    case "sortText":
+                        item.sortText = in.nextString();
+                        break;
+                    case "filterText":
+                        item.filterText = in.nextString();
+                        break;
+                    case "insertText":
+                        item.insertText = in.nextString();
+                        break;
+                    case "insertTextFormat":
+                        item.insertTextFormat = in.nextInt();
+                        break;
+                    case "textEdit":
+                        item.textEdit = TEXT_EDIT.read(in);
+                        break;
+                    case "additionalTextEdits":
+                        item.additionalTextEdits = edits.read(in);
+                        break;
+                    case "commitCharacters":
+                        item.commitCharacters = characters.read(in);
+                        break;
+                    case "command":
+                        item.command = command.read(in);
+                        break;
+                    case "data":
+                        item.data = json.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return item;
+        }
+    }
+
+    /** Reflective adapters leave a field at its default when the value is null, so we do too */
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NULL) return false;
+        in.nextNull();
+        return true;
+    }
+
+    private static String uri(URI uri) {
+        return uri == null ? null : uri.toASCIIString();
+    }
+}
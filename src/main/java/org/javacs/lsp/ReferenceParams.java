@@ -1,5 +1,9 @@
 package org.javacs.lsp;
 
+import com.google.gson.JsonElement;
+
 public class ReferenceParams extends TextDocumentPositionParams {
     public ReferenceContext context;
+    /** If present, the client wants results streamed as `$/progress` notifications with this token */
+    public JsonElement partialResultToken;
 }
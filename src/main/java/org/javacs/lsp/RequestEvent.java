@@ -0,0 +1,26 @@
+package org.javacs.lsp;
+
+import jdk.jfr.*;
+
+@Name("org.javacs.Request")
+@Label("LSP Message")
+@Description("Handle one message from the client")
+@Category("Java Language Server")
+class RequestEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Id")
+    int id;
+
+    @Label("Queued")
+    @Timespan(Timespan.NANOSECONDS)
+    long queued;
+
+    @Label("Response")
+    @DataAmount(DataAmount.BYTES)
+    int responseBytes;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,67 @@
+package org.javacs.lsp;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * SessionRecorder writes every message the client sends to a file, one JSON object per line, with the time it arrived.
+ * The recording can be replayed later to reproduce a slow editing session.
+ */
+public class SessionRecorder {
+    public static class Entry {
+        /** Milliseconds since the recording started */
+        public long time;
+
+        public Message message;
+    }
+
+    private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(new ProtocolAdapters()).create();
+
+    private final Writer out;
+    private final long started = System.nanoTime();
+
+    SessionRecorder(Path file) {
+        try {
+            this.out = Files.newBufferedWriter(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        LOG.info("Recording session to " + file);
+    }
+
+    synchronized void record(Message message) {
+        var entry = new Entry();
+        entry.time = (message.received - started) / 1_000_000;
+        entry.message = message;
+        try {
+            gson.toJson(entry, out);
+            out.write('\n');
+            // Flush every message, so the recording is complete even if the server is killed
+            out.flush();
+        } catch (IOException e) {
+            LOG.warning("Failed to record message: " + e.getMessage());
+        }
+    }
+
+    public static List<Entry> read(Path file) {
+        var entries = new ArrayList<Entry>();
+        try (var lines = Files.newBufferedReader(file)) {
+            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
+                if (line.isBlank()) continue;
+                entries.add(gson.fromJson(line, Entry.class));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return entries;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
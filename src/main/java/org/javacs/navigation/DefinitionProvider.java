@@ -29,7 +29,7 @@ public class DefinitionProvider {
     }
 
     public List<Location> find() {
-        try (var task = compiler.compile(file)) {
+        try (var task = compiler.compilePruned(file, line, column)) {
             var element = NavigationHelper.findElement(task, file, line, column);
             if (element == null) return NOT_SUPPORTED;
             if (element.asType().getKind() == TypeKind.ERROR) {
@@ -1,27 +1,46 @@
 package org.javacs.navigation;
 
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.TreePath;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import javax.lang.model.element.TypeElement;
 import org.javacs.CompileTask;
 import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
+import org.javacs.lsp.CancelToken;
 import org.javacs.lsp.Location;
 
 public class ReferenceProvider {
     private final CompilerProvider compiler;
     private final Path file;
-    private final int line, column;
+    private final int line, column, batchSize;
+    private final Progress progress;
 
     public static final List<Location> NOT_SUPPORTED = List.of();
 
-    public ReferenceProvider(CompilerProvider compiler, Path file, int line, int column) {
+    /** Progress is notified after each batch of candidate files has been searched */
+    public interface Progress {
+        void batch(List<Location> found, int doneFiles, int totalFiles);
+    }
+
+    public ReferenceProvider(CompilerProvider compiler, Path file, int line, int column, int batchSize) {
+        this(compiler, file, line, column, batchSize, (found, doneFiles, totalFiles) -> {});
+    }
+
+    /** Search the files that might contain references `batchSize` at a time */
+    public ReferenceProvider(
+            CompilerProvider compiler, Path file, int line, int column, int batchSize, Progress progress) {
         this.compiler = compiler;
         this.file = file;
         this.line = line;
         this.column = column;
+        this.batchSize = batchSize;
+        this.progress = progress;
     }
 
     public List<Location> find() {
@@ -53,24 +72,54 @@ public class ReferenceProvider {
 
     private List<Location> findTypeReferences(String className) {
         var files = compiler.findTypeReferences(className);
-        if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findReferences(task);
-        }
+        return findReferencesInBatches(files);
     }
 
     private List<Location> findMemberReferences(String className, String memberName) {
         var files = compiler.findMemberReferences(className, memberName);
-        if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findReferences(task);
+        return findReferencesInBatches(files);
+    }
+
+    private List<Location> findReferencesInBatches(Path[] files) {
+        var cancel = CancelToken.current();
+        var locations = new ArrayList<Location>();
+        for (var start = 0; start < files.length; start += batchSize) {
+            cancel.checkCancelled();
+            var end = Math.min(start + batchSize, files.length);
+            var found = findReferences(Arrays.asList(files).subList(start, end));
+            locations.addAll(found);
+            progress.batch(found, end, files.length);
+        }
+        return locations;
+    }
+
+    private List<Location> findReferences(List<Path> batch) {
+        // We need the file we're searching from in every batch, to find the element under the cursor
+        var sources = new ArrayList<Path>(batch);
+        if (!sources.contains(file)) {
+            sources.add(file);
+        }
+        var search = new HashSet<Path>(batch);
+        try (var task = compiler.compile(sources.toArray(Path[]::new))) {
+            var roots = new ArrayList<CompilationUnitTree>();
+            for (var root : task.roots) {
+                // Other files are searched in their own batch
+                if (search.contains(Paths.get(root.getSourceFile().toUri()))) {
+                    roots.add(root);
+                }
+            }
+            return findReferences(task, roots);
         }
     }
 
     private List<Location> findReferences(CompileTask task) {
+        return findReferences(task, task.roots);
+    }
+
+    private List<Location> findReferences(CompileTask task, List<CompilationUnitTree> roots) {
         var element = NavigationHelper.findElement(task, file, line, column);
         var paths = new ArrayList<TreePath>();
-        for (var root : task.roots) {
+        for (var root : roots) {
             new FindReferences(task.task, element).scan(root, paths);
         }
         var locations = new ArrayList<Location>();
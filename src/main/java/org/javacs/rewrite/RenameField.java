@@ -8,15 +8,23 @@ import org.javacs.lsp.TextEdit;
 
 public class RenameField implements Rewrite {
     final String className, fieldName, newName;
+    final int batchSize;
 
-    public RenameField(String className, String fieldName, String newName) {
+    /** Rename the field in the files that mention it, compiling `batchSize` of them at a time */
+    public RenameField(String className, String fieldName, String newName, int batchSize) {
         this.className = className;
         this.fieldName = fieldName;
         this.newName = newName;
+        this.batchSize = batchSize;
     }
 
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        return rewrite(compiler, Progress.NONE);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
         LOG.info("Rewrite " + className + "#" + fieldName + " to " + newName + "...");
         var paths = compiler.findMemberReferences(className, fieldName);
         if (paths.length == 0) {
@@ -24,11 +32,14 @@ public class RenameField implements Rewrite {
             return Map.of();
         }
         LOG.info("...check " + paths.length + " files for references");
-        try (var compile = compiler.compile(paths)) {
-            var helper = new RenameHelper(compile);
-            var edits = helper.renameField(compile.roots, className, fieldName, newName);
-            return edits;
-        }
+        var declaringFile = compiler.findTypeDeclaration(className);
+        return RenameHelper.renameInBatches(
+                compiler,
+                paths,
+                declaringFile,
+                batchSize,
+                progress,
+                (helper, roots) -> helper.renameField(roots, className, fieldName, newName));
     }
 
     private static final Logger LOG = Logger.getLogger("main");
@@ -11,9 +11,12 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.lang.model.element.Element;
@@ -21,7 +24,9 @@ import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import org.javacs.CompileTask;
+import org.javacs.CompilerProvider;
 import org.javacs.FindHelper;
+import org.javacs.lsp.CancelToken;
 import org.javacs.lsp.Position;
 import org.javacs.lsp.Range;
 import org.javacs.lsp.TextEdit;
@@ -33,6 +38,43 @@ class RenameHelper {
         this.task = task;
     }
 
+    /**
+     * Compile `paths` in batches of `batchSize`, each together with `declaringFile`, and merge the edits that `rename`
+     * finds in the roots of each batch.
+     */
+    static Map<Path, TextEdit[]> renameInBatches(
+            CompilerProvider compiler,
+            Path[] paths,
+            Path declaringFile,
+            int batchSize,
+            Rewrite.Progress progress,
+            BiFunction<RenameHelper, List<CompilationUnitTree>, Map<Path, TextEdit[]>> rename) {
+        var cancel = CancelToken.current();
+        var allEdits = new HashMap<Path, TextEdit[]>();
+        for (var start = 0; start < paths.length; start += batchSize) {
+            cancel.checkCancelled();
+            var end = Math.min(start + batchSize, paths.length);
+            var batch = Arrays.asList(paths).subList(start, end);
+            var sources = new ArrayList<Path>(batch);
+            if (declaringFile != CompilerProvider.NOT_FOUND && !sources.contains(declaringFile)) {
+                sources.add(declaringFile);
+            }
+            try (var compile = compiler.compile(sources.toArray(Path[]::new))) {
+                // Other files are rewritten in their own batch
+                var search = new HashSet<Path>(batch);
+                var roots = new ArrayList<CompilationUnitTree>();
+                for (var root : compile.roots) {
+                    if (search.contains(Paths.get(root.getSourceFile().toUri()))) {
+                        roots.add(root);
+                    }
+                }
+                allEdits.putAll(rename.apply(new RenameHelper(compile), roots));
+            }
+            progress.checked(end, paths.length);
+        }
+        return allEdits;
+    }
+
     TextEdit[] renameVariable(CompilationUnitTree root, TreePath rename, String newName) {
         var trees = Trees.instance(task.task);
         var target = trees.getElement(rename);
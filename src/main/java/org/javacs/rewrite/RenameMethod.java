@@ -10,16 +10,25 @@ public class RenameMethod implements Rewrite {
     final String className, methodName;
     final String[] erasedParameterTypes;
     final String newName;
+    final int batchSize;
 
-    public RenameMethod(String className, String methodName, String[] erasedParameterTypes, String newName) {
+    /** Rename the method in the files that mention it, compiling `batchSize` of them at a time */
+    public RenameMethod(
+            String className, String methodName, String[] erasedParameterTypes, String newName, int batchSize) {
         this.className = className;
         this.methodName = methodName;
         this.erasedParameterTypes = erasedParameterTypes;
         this.newName = newName;
+        this.batchSize = batchSize;
     }
 
     @Override
     public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler) {
+        return rewrite(compiler, Progress.NONE);
+    }
+
+    @Override
+    public Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
         LOG.info("Rewrite " + className + "#" + methodName + " to " + newName + "...");
         var paths = compiler.findMemberReferences(className, methodName);
         if (paths.length == 0) {
@@ -27,11 +36,14 @@ public class RenameMethod implements Rewrite {
             return Map.of();
         }
         LOG.info("...check " + paths.length + " files for references");
-        try (var compile = compiler.compile(paths)) {
-            var helper = new RenameHelper(compile);
-            var edits = helper.renameMethod(compile.roots, className, methodName, erasedParameterTypes, newName);
-            return edits;
-        }
+        var declaringFile = compiler.findTypeDeclaration(className);
+        return RenameHelper.renameInBatches(
+                compiler,
+                paths,
+                declaringFile,
+                batchSize,
+                progress,
+                (helper, roots) -> helper.renameMethod(roots, className, methodName, erasedParameterTypes, newName));
     }
 
     private static final Logger LOG = Logger.getLogger("main");
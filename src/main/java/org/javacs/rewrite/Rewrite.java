@@ -8,6 +8,18 @@ import org.javacs.lsp.TextEdit;
 public interface Rewrite {
     /** Perform a rewrite across the entire codebase. */
     Map<Path, TextEdit[]> rewrite(CompilerProvider compiler);
+
+    /** Perform a rewrite across the entire codebase, reporting progress as files are checked. */
+    default Map<Path, TextEdit[]> rewrite(CompilerProvider compiler, Progress progress) {
+        return rewrite(compiler);
+    }
+
+    /** Progress is notified each time a rewrite has checked another batch of files. */
+    interface Progress {
+        void checked(int doneFiles, int totalFiles);
+
+        Progress NONE = (doneFiles, totalFiles) -> {};
+    }
     /** CANCELLED signals that the rewrite couldn't be completed. */
     Map<Path, TextEdit[]> CANCELLED = Map.of();
 
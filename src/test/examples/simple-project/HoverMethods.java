@@ -0,0 +1,11 @@
+class HoverMethods {
+    void a() {
+        int a = 1;
+        int usesA = a;
+    }
+
+    void b() {
+        String b = "";
+        String usesB = b;
+    }
+}
@@ -0,0 +1,73 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import com.google.devtools.build.lib.analysis.AnalysisProtos;
+import com.google.devtools.build.lib.analysis.AnalysisProtosV2;
+import com.google.protobuf.Message;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+
+public class ActionGraphTest {
+    private static final List<String> ARGUMENTS =
+            List.of("javac", "--classpath", "bazel-out/lib.jar", "bazel-out/gen.jar", "--output", "bazel-out/gen.jar");
+
+    private static Path write(Message container) throws IOException {
+        var file = Files.createTempFile("action-graph", ".proto");
+        try (var out = Files.newOutputStream(file)) {
+            container.writeTo(out);
+        }
+        return file;
+    }
+
+    /** bazel-out/lib.jar is a dependency, bazel-out/gen.jar is the output of the action */
+    private static Path v1() throws IOException {
+        var container =
+                AnalysisProtos.ActionGraphContainer.newBuilder()
+                        .addArtifacts(AnalysisProtos.Artifact.newBuilder().setId("a").setExecPath("bazel-out/lib.jar"))
+                        .addArtifacts(AnalysisProtos.Artifact.newBuilder().setId("b").setExecPath("bazel-out/gen.jar"))
+                        .addActions(AnalysisProtos.Action.newBuilder().addAllArguments(ARGUMENTS).addOutputIds("b"))
+                        .addTargets(AnalysisProtos.Target.newBuilder().setId("t").setLabel("//:lib"))
+                        .build();
+        return write(container);
+    }
+
+    private static Path v2() throws IOException {
+        var container =
+                AnalysisProtosV2.ActionGraphContainer.newBuilder()
+                        .addArtifacts(AnalysisProtosV2.Artifact.newBuilder().setId(1).setPathFragmentId(2))
+                        .addArtifacts(AnalysisProtosV2.Artifact.newBuilder().setId(2).setPathFragmentId(3))
+                        .addActions(AnalysisProtosV2.Action.newBuilder().addAllArguments(ARGUMENTS).addOutputIds(2))
+                        .addTargets(AnalysisProtosV2.Target.newBuilder().setId(1).setLabel("//:lib"))
+                        .addDepSetOfFiles(AnalysisProtosV2.DepSetOfFiles.newBuilder().setId(1).addDirectArtifactIds(1))
+                        .addPathFragments(AnalysisProtosV2.PathFragment.newBuilder().setId(1).setLabel("bazel-out"))
+                        .addPathFragments(
+                                AnalysisProtosV2.PathFragment.newBuilder().setId(2).setParentId(1).setLabel("lib.jar"))
+                        .addPathFragments(
+                                AnalysisProtosV2.PathFragment.newBuilder().setId(3).setParentId(1).setLabel("gen.jar"))
+                        .build();
+        return write(container);
+    }
+
+    @Test
+    public void readV1() throws IOException {
+        assertThat(ActionGraph.read(v1(), "--classpath"), contains("bazel-out/lib.jar"));
+        assertThat(ActionGraph.read(v1(), "--output"), contains("bazel-out/gen.jar"));
+    }
+
+    @Test
+    public void readV2() throws IOException {
+        assertThat(ActionGraph.read(v2(), "--classpath"), contains("bazel-out/lib.jar"));
+        assertThat(ActionGraph.read(v2(), "--output"), contains("bazel-out/gen.jar"));
+    }
+
+    @Test
+    public void readEmpty() throws IOException {
+        var empty = Files.createTempFile("action-graph", ".proto");
+        assertThat(ActionGraph.read(empty, "--classpath"), empty());
+    }
+}
@@ -0,0 +1,183 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.javacs.action.CodeActionProvider;
+import org.javacs.completion.CompletionProvider;
+import org.javacs.completion.SignatureProvider;
+import org.javacs.fold.FoldProvider;
+import org.javacs.hover.HoverProvider;
+import org.javacs.index.SymbolProvider;
+import org.javacs.lsp.*;
+import org.javacs.markup.ColorProvider;
+import org.javacs.markup.ErrorProvider;
+import org.javacs.markup.SemanticColors;
+import org.javacs.navigation.DefinitionProvider;
+import org.javacs.navigation.ReferenceProvider;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measure each feature provider against the maven-project examples. With cache=warm, the same request is repeated on
+ * an unchanged file, so the parse and compile caches hit, as they do when the user asks for several things without
+ * typing. With cache=cold, the open files are edited before every request, as they are while the user is typing.
+ *
+ * <p>Run with `-prof gc` to measure allocation, and `-rf json` to save the results:
+ *
+ * <pre>./scripts/benchmark.sh BenchmarkProviders -prof gc -rf json -rff target/benchmark-providers.json</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkProviders {
+
+    @State(Scope.Benchmark)
+    public static class ProviderState {
+        @Param({"warm", "cold"})
+        public String cache;
+
+        public CompilerProvider compiler;
+        public Path symbolUnderCursor = FindResource.path("/org/javacs/example/SymbolUnderCursor.java");
+        public Path signatureHelp = FindResource.path("/org/javacs/example/SignatureHelp.java");
+        private int version = 1;
+
+        @Setup(Level.Trial)
+        public void open() {
+            compiler = LanguageServerFixture.getCompilerProvider();
+            for (var file : List.of(symbolUnderCursor, signatureHelp)) {
+                var params = new DidOpenTextDocumentParams();
+                params.textDocument.uri = file.toUri();
+                params.textDocument.text = FileStore.contents(file);
+                params.textDocument.version = version;
+                FileStore.open(params);
+            }
+        }
+
+        /** Replace the open files with their own contents, which gives them a new modified time */
+        @Setup(Level.Invocation)
+        public void edit() throws InterruptedException {
+            if (!cache.equals("cold")) return;
+            // Modified times have millisecond resolution
+            Thread.sleep(1);
+            version++;
+            for (var file : List.of(symbolUnderCursor, signatureHelp)) {
+                var change = new TextDocumentContentChangeEvent();
+                change.text = FileStore.contents(file);
+                var params = new DidChangeTextDocumentParams();
+                params.textDocument.uri = file.toUri();
+                params.textDocument.version = version;
+                params.contentChanges.add(change);
+                FileStore.change(params);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            for (var file : List.of(symbolUnderCursor, signatureHelp)) {
+                var params = new DidCloseTextDocumentParams();
+                params.textDocument.uri = file.toUri();
+                FileStore.close(params);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EditState {
+        public Path file = FindResource.path("/org/javacs/example/Goto.java");
+        public int version = 1;
+
+        @Setup(Level.Trial)
+        public void open() {
+            var params = new DidOpenTextDocumentParams();
+            params.textDocument.uri = file.toUri();
+            params.textDocument.text = FileStore.contents(file);
+            params.textDocument.version = version;
+            FileStore.open(params);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            var params = new DidCloseTextDocumentParams();
+            params.textDocument.uri = file.toUri();
+            FileStore.close(params);
+        }
+    }
+
+    @Benchmark
+    public CompletionList completion(ProviderState state) {
+        return new CompletionProvider(state.compiler).complete(state.symbolUnderCursor, 13, 15);
+    }
+
+    @Benchmark
+    public List<MarkedString> hover(ProviderState state) {
+        return new HoverProvider(state.compiler).hover(state.symbolUnderCursor, 12, 23);
+    }
+
+    @Benchmark
+    public SignatureHelp signatureHelp(ProviderState state) {
+        return new SignatureProvider(state.compiler).signatureHelp(state.signatureHelp, 7, 36);
+    }
+
+    @Benchmark
+    public List<Location> definition(ProviderState state) {
+        return new DefinitionProvider(state.compiler, state.symbolUnderCursor, 12, 10).find();
+    }
+
+    @Benchmark
+    public List<Location> references(ProviderState state) {
+        return new ReferenceProvider(state.compiler, state.symbolUnderCursor, 22, 20, 100).find();
+    }
+
+    @Benchmark
+    public List<SymbolInformation> workspaceSymbols(ProviderState state) {
+        return new SymbolProvider(state.compiler).findSymbols("Symbol", 50);
+    }
+
+    @Benchmark
+    public List<SymbolInformation> documentSymbols(ProviderState state) {
+        return new SymbolProvider(state.compiler).documentSymbols(state.symbolUnderCursor);
+    }
+
+    @Benchmark
+    public List<FoldingRange> foldingRanges(ProviderState state) {
+        return new FoldProvider(state.compiler).foldingRanges(state.symbolUnderCursor);
+    }
+
+    @Benchmark
+    public List<CodeAction> codeActions(ProviderState state) {
+        var params = new CodeActionParams();
+        params.textDocument = new TextDocumentIdentifier(state.symbolUnderCursor.toUri());
+        params.range = new Range(new Position(5, 20), new Position(5, 20));
+        return new CodeActionProvider(state.compiler).codeActionsForCursor(params);
+    }
+
+    /** Lint, which compiles the file and reports errors and colors */
+    @Benchmark
+    public SemanticColors[] lint(ProviderState state) {
+        try (var task = state.compiler.compile(state.symbolUnderCursor)) {
+            new ErrorProvider(task).errors();
+            return new ColorProvider(task).colors();
+        }
+    }
+
+    /** A burst of typing that the reader coalesced into one notification: type 10 characters, then delete them */
+    @Benchmark
+    public void fileStoreChange(EditState state) {
+        var params = new DidChangeTextDocumentParams();
+        params.textDocument.uri = state.file.toUri();
+        params.textDocument.version = ++state.version;
+        for (var i = 0; i < 10; i++) {
+            var type = new TextDocumentContentChangeEvent();
+            type.range = new Range(new Position(5, 4 + i), new Position(5, 4 + i));
+            type.text = "x";
+            params.contentChanges.add(type);
+        }
+        var delete = new TextDocumentContentChangeEvent();
+        delete.range = new Range(new Position(5, 4), new Position(5, 14));
+        delete.text = "";
+        params.contentChanges.add(delete);
+        FileStore.change(params);
+    }
+}
@@ -0,0 +1,30 @@
+package org.javacs;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.javacs.lsp.SessionRecorder;
+import org.openjdk.jmh.annotations.*;
+
+/** Replay a recorded session, for example `org.openjdk.jmh.Main BenchmarkReplay -p recording=session.jsonl` */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkReplay {
+    @Param("") public String recording;
+
+    List<SessionRecorder.Entry> session;
+
+    @Setup
+    public void load() {
+        session = SessionRecorder.read(Paths.get(recording));
+    }
+
+    @Benchmark
+    public List<ReplaySession.Latency> replay() {
+        return ReplaySession.replay(session);
+    }
+}
@@ -0,0 +1,92 @@
+package org.javacs;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.javacs.lsp.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measure how the server scales with the size of the workspace, using workspaces from SyntheticWorkspace. Generating
+ * the 100k-file workspace takes a while the first time; later runs reuse it from target/synthetic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BenchmarkWorkspace {
+
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        @Param({"1000", "10000", "100000"})
+        public int files;
+
+        public SyntheticWorkspace workspace;
+        public JavaLanguageServer server;
+        /** C0.method0, which has the most references */
+        public TextDocumentPositionParams declaration;
+        /** `field0.meth|` in the last class */
+        public TextDocumentPositionParams member;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            var config = new SyntheticWorkspace.Config();
+            config.files = files;
+            workspace = SyntheticWorkspace.cached(config);
+            server = LanguageServerFixture.getJavaLanguageServer(workspace.root, diagnostic -> {});
+
+            var first = workspace.file(0);
+            declaration =
+                    new TextDocumentPositionParams(
+                            new TextDocumentIdentifier(first.toUri()), SyntheticWorkspace.find(first, "method0"));
+            var last = workspace.file(files - 1);
+            var position = SyntheticWorkspace.find(last, "field0.method0");
+            position.character += "field0.meth".length();
+            member = new TextDocumentPositionParams(new TextDocumentIdentifier(last.toUri()), position);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ColdState {
+        /** Forget the workspace, so the next startup has to walk it again */
+        @Setup(Level.Invocation)
+        public void forget() {
+            FileStore.setWorkspaceRoots(Set.of());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void startup(WorkspaceState state, ColdState cold) {
+        var server = LanguageServerFixture.getJavaLanguageServer(state.workspace.root, diagnostic -> {});
+        server.compiler().compile(state.workspace.file(0)).close();
+    }
+
+    @Benchmark
+    public List<SymbolInformation> workspaceSymbol(WorkspaceState state) {
+        return state.server.workspaceSymbols(new WorkspaceSymbolParams("C12"));
+    }
+
+    @Benchmark
+    public List<Location> references(WorkspaceState state) {
+        var params = new ReferenceParams();
+        params.textDocument = state.declaration.textDocument;
+        params.position = state.declaration.position;
+        return state.server.findReferences(params).orElse(List.of());
+    }
+
+    @Benchmark
+    public WorkspaceEdit rename(WorkspaceState state) {
+        var params = new RenameParams();
+        params.textDocument = state.declaration.textDocument;
+        params.position = state.declaration.position;
+        params.newName = "renamed";
+        return state.server.rename(params);
+    }
+
+    @Benchmark
+    public CompletionList completion(WorkspaceState state) {
+        return state.server.completion(state.member).orElseThrow();
+    }
+}
@@ -0,0 +1,41 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ClassNameIndexTest {
+    ClassNameIndex index =
+            new ClassNameIndex(
+                    List.of(
+                            "java.util.List",
+                            "java.util.ArrayList",
+                            "java.util.LinkedList",
+                            "java.util.concurrent.ConcurrentMap",
+                            "java.awt.List",
+                            "DefaultPackage"));
+
+    @Test
+    public void named() {
+        assertThat(index.named("List", 10), containsInAnyOrder("java.util.List", "java.awt.List"));
+        assertThat(index.named("L", 10), hasItems("java.util.List", "java.util.LinkedList"));
+        assertThat(index.named("Default", 10), contains("DefaultPackage"));
+        assertThat(index.named("Nope", 10), empty());
+        assertThat(index.named("L", 1), hasSize(1));
+    }
+
+    @Test
+    public void inPackage() {
+        assertThat(index.inPackage("java.util", "L", 10), contains("java.util.LinkedList", "java.util.List"));
+        assertThat(index.inPackage("java.util", "", 10), not(hasItem("java.util.concurrent.ConcurrentMap")));
+        assertThat(index.inPackage("", "", 10), contains("DefaultPackage"));
+    }
+
+    @Test
+    public void packages() {
+        assertThat(index.packages("java.u"), contains("java.util", "java.util.concurrent"));
+        assertThat(index.packages("java."), contains("java.awt", "java.util", "java.util.concurrent"));
+    }
+}
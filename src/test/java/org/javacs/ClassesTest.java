@@ -7,6 +7,9 @@ import java.net.URI;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.util.Collections;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import org.javacs.guava.ClassPath;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -28,6 +31,43 @@ public class ClassesTest {
         assertThat(jdk, hasItem("java.util.ArrayList"));
     }
 
+    @Test
+    public void scanJar() throws Exception {
+        var jar = Files.createTempFile("scan-jar", ".jar");
+        jar.toFile().deleteOnExit();
+        try (var out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("org/example/Foo.class"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("org/example/Foo$Inner.class"));
+            out.closeEntry();
+        }
+        var first = ScanClassPath.classPathTopLevelClasses(Set.of(jar));
+        assertThat(first, hasItem("org.example.Foo"));
+        assertThat(first, not(hasItem("org.example.Foo$Inner")));
+        // The second scan is served from the cache
+        var second = ScanClassPath.classPathTopLevelClasses(Set.of(jar));
+        assertThat(second, equalTo(first));
+    }
+
+    @Test
+    public void dontCacheFailedScans() throws Exception {
+        var good = Files.createTempFile("scan-good", ".jar");
+        good.toFile().deleteOnExit();
+        try (var out = new JarOutputStream(Files.newOutputStream(good))) {
+            out.putNextEntry(new JarEntry("org/example/Good.class"));
+            out.closeEntry();
+        }
+        var broken = Files.createTempFile("scan-broken", ".jar");
+        broken.toFile().deleteOnExit();
+        Files.writeString(broken, "not a jar");
+        var found = ScanClassPath.classPathTopLevelClasses(Set.of(good, broken));
+        assertThat(found, hasItem("org.example.Good"));
+        // Only the jar that was scanned is saved
+        var saved = Files.readString(DiskCache.directory().resolve("classpath-index.json"));
+        assertThat(saved, containsString(good.getFileName().toString()));
+        assertThat(saved, not(containsString(broken.getFileName().toString())));
+    }
+
     @Test
     @Ignore
     public void platformClassPath() throws Exception {
@@ -5,8 +5,13 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.javacs.completion.CompletionProvider;
 import org.javacs.lsp.*;
@@ -752,4 +757,119 @@ public class CompletionsTest extends CompletionsBase {
         var inserts = filterText("/org/javacs/example/MultilineChain.java", 6, 14);
         assertThat(inserts, hasItem("concat"));
     }
+
+    @Test
+    public void continueTypingMember() {
+        var file = FindResource.path("/org/javacs/example/CompleteExpression.java");
+        var original = FileStore.contents(file);
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = original;
+        server.didOpenTextDocument(open);
+        try {
+            var suggestions = filterText("/org/javacs/example/CompleteExpression.java", 5, 37);
+            assertThat(suggestions, hasItems("instanceMethod", "equals"));
+            // Extending the identifier filters the members we already found
+            edit(file, 1, original.replace("create().", "create().in"));
+            suggestions = filterText("/org/javacs/example/CompleteExpression.java", 5, 39);
+            assertThat(suggestions, hasItem("instanceMethod"));
+            assertThat(suggestions, not(hasItem("equals")));
+            // Changing the receiver starts over
+            edit(file, 2, original.replace("create().", "create().toString().in"));
+            suggestions = filterText("/org/javacs/example/CompleteExpression.java", 5, 50);
+            assertThat(suggestions, hasItem("indexOf"));
+            assertThat(suggestions, not(hasItem("instanceMethod")));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            server.didCloseTextDocument(close);
+        }
+    }
+
+    @Test
+    public void editSameMethod() {
+        var file = FindResource.path("/org/javacs/example/CompleteExpression.java");
+        var original = FileStore.contents(file);
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = original;
+        server.didOpenTextDocument(open);
+        try {
+            var suggestions = filterText("/org/javacs/example/CompleteExpression.java", 5, 37);
+            assertThat(suggestions, hasItem("instanceMethod"));
+            // The new local variable is only visible if we prune the edited text, not a stale copy of the method
+            edit(file, 1, original.replace("create().", "create();\n        int newLocal = 1;\n        newL"));
+            suggestions = filterText("/org/javacs/example/CompleteExpression.java", 7, 13);
+            assertThat(suggestions, hasItem("newLocal"));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            server.didCloseTextDocument(close);
+        }
+    }
+
+    @Test
+    public void editingReceiverClassEndsSession() {
+        var file = FindResource.path("/org/javacs/example/CompleteClass.java");
+        var receiver = FindResource.path("/org/javacs/example/CompleteExpression.java");
+        var text = FileStore.contents(file).replace("CompleteClass.", "new CompleteExpression().");
+        var receiverText = FileStore.contents(receiver);
+        // Count the completions that were answered from the session instead of compiling
+        var resumed = new AtomicInteger();
+        var handler =
+                new Handler() {
+                    @Override
+                    public void publish(LogRecord record) {
+                        if (record.getMessage().startsWith("...continue completing")) resumed.incrementAndGet();
+                    }
+
+                    @Override
+                    public void flush() {}
+
+                    @Override
+                    public void close() {}
+                };
+        Logger.getLogger("main").addHandler(handler);
+        open(file, text);
+        open(receiver, receiverText);
+        try {
+            filterText("/org/javacs/example/CompleteClass.java", 5, 34);
+            edit(file, 1, text.replace("().", "().in"));
+            assertThat(filterText("/org/javacs/example/CompleteClass.java", 5, 36), hasItem("instanceMethod"));
+            assertThat(resumed.get(), equalTo(1));
+            // Editing CompleteExpression means the remembered members may be out of date
+            var inserted = "int inserted() {\n    }\n\n    int instanceMethod()";
+            edit(receiver, 1, receiverText.replace("int instanceMethod()", inserted));
+            edit(file, 2, text.replace("().", "().ins"));
+            assertThat(filterText("/org/javacs/example/CompleteClass.java", 5, 37), hasItem("instanceMethod"));
+            assertThat(resumed.get(), equalTo(1));
+        } finally {
+            Logger.getLogger("main").removeHandler(handler);
+            close(file);
+            close(receiver);
+        }
+    }
+
+    private void open(Path file, String text) {
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = text;
+        server.didOpenTextDocument(open);
+    }
+
+    private void close(Path file) {
+        var close = new DidCloseTextDocumentParams();
+        close.textDocument.uri = file.toUri();
+        server.didCloseTextDocument(close);
+    }
+
+    private void edit(Path file, int version, String text) {
+        var change = new DidChangeTextDocumentParams();
+        change.textDocument.uri = file.toUri();
+        change.textDocument.version = version;
+        var evt = new TextDocumentContentChangeEvent();
+        evt.text = text;
+        change.contentChanges.add(evt);
+        server.didChangeTextDocument(change);
+    }
 }
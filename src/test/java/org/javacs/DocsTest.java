@@ -0,0 +1,69 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocsTest {
+    private Path sourceJar;
+
+    @Before
+    public void createSourceJar() throws IOException {
+        sourceJar = Files.createTempFile("docs-sources", ".jar");
+        sourceJar.toFile().deleteOnExit();
+        writeSourceJar("Foo", "public class Foo {}");
+    }
+
+    private void writeSourceJar(String className, String body) throws IOException {
+        try (var out = new JarOutputStream(Files.newOutputStream(sourceJar))) {
+            out.putNextEntry(new JarEntry("org/example/" + className + ".java"));
+            out.write(("package org.example;\n\n" + body + "\n").getBytes());
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("org/example/package-info.java"));
+            out.closeEntry();
+        }
+    }
+
+    @Test
+    public void findClassInSourceJar() throws IOException {
+        var docs = new Docs(Set.of(sourceJar));
+        var found = docs.find("org.example.Foo");
+        assertTrue(found.isPresent());
+        assertThat(found.get().getCharContent(true).toString(), containsString("public class Foo"));
+        assertThat(docs.find("org.example.package-info"), equalTo(Optional.empty()));
+        assertThat(docs.find("org.example.Bar"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void findClassInSrcZip() {
+        var docs = new Docs(Set.of());
+        assertTrue(docs.find("java.util.ArrayList").isPresent());
+    }
+
+    @Test
+    public void reindexReplacedJar() throws IOException {
+        var before = new Docs(Set.of(sourceJar));
+        assertTrue(before.find("org.example.Foo").isPresent());
+        // Like downloading a new SNAPSHOT to the same path
+        var modified = Files.getLastModifiedTime(sourceJar).toMillis();
+        writeSourceJar("Bar", "public class Bar { int renamed; }");
+        Files.setLastModifiedTime(sourceJar, FileTime.fromMillis(modified + 1000));
+        var after = new Docs(Set.of(sourceJar));
+        var found = after.find("org.example.Bar");
+        assertTrue(found.isPresent());
+        assertThat(found.get().getCharContent(true).toString(), containsString("int renamed"));
+        assertFalse(after.find("org.example.Foo").isPresent());
+        // The old index points at an entry that is gone
+        assertFalse(before.find("org.example.Foo").isPresent());
+    }
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 import java.util.Set;
+import org.javacs.lsp.*;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -19,4 +20,35 @@ public class FileStoreTest {
         var file = FindResource.path("/org/javacs/example/Goto.java");
         assertThat(FileStore.suggestedPackageName(file), equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void applyManyChanges() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = "class Foo {\r\n    void bar() {}\n}";
+        open.textDocument.version = 1;
+        FileStore.open(open);
+        try {
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument.uri = file.toUri();
+            change.textDocument.version = 2;
+            change.contentChanges.add(edit(1, 9, 1, 12, "baz"));
+            change.contentChanges.add(edit(1, 16, 1, 16, " int x; "));
+            change.contentChanges.add(edit(0, 6, 0, 9, "Bar"));
+            FileStore.change(change);
+            assertThat(FileStore.contents(file), equalTo("class Bar {\r\n    void baz() { int x; }\n}"));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+        }
+    }
+
+    private TextDocumentContentChangeEvent edit(int startLine, int startChar, int endLine, int endChar, String text) {
+        var evt = new TextDocumentContentChangeEvent();
+        evt.range = new Range(new Position(startLine, startChar), new Position(endLine, endChar));
+        evt.text = text;
+        return evt;
+    }
 }
@@ -3,6 +3,8 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
 import java.util.ArrayList;
 import java.util.List;
 import org.javacs.lsp.*;
@@ -56,4 +58,37 @@ public class FindReferencesTest {
         assertThat(items(file, 4, 12), contains("StackedFieldReferences.java(8)"));
         assertThat(items(file, 4, 15), contains("StackedFieldReferences.java(9)"));
     }
+
+    @Test
+    public void streamPartialResults() {
+        var progress = new ArrayList<JsonElement>();
+        var client =
+                new LanguageClient() {
+                    @Override
+                    public void publishDiagnostics(PublishDiagnosticsParams params) {}
+
+                    @Override
+                    public void showMessage(ShowMessageParams params) {}
+
+                    @Override
+                    public void registerCapability(String method, JsonElement options) {}
+
+                    @Override
+                    public void customNotification(String method, JsonElement params) {
+                        if (method.equals("$/progress")) progress.add(params);
+                    }
+                };
+        var streaming =
+                LanguageServerFixture.getJavaLanguageServer(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT, client);
+        var params = new ReferenceParams();
+        params.textDocument = new TextDocumentIdentifier(FindResource.uri("/org/javacs/example/GotoOther.java"));
+        params.position = new Position(5, 29);
+        params.partialResultToken = new JsonPrimitive("partial");
+        var found = streaming.findReferences(params);
+        assertThat(found.get(), empty());
+        assertThat(progress, not(empty()));
+        var first = progress.get(0).getAsJsonObject();
+        assertThat(first.get("token").getAsString(), equalTo("partial"));
+        assertThat(first.get("value").getAsJsonArray().size(), greaterThan(0));
+    }
 }
@@ -0,0 +1,48 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import jdk.jfr.consumer.RecordingFile;
+import org.javacs.lsp.*;
+import org.junit.Test;
+
+public class FlightRecorderTest {
+    private static final JavaLanguageServer server = LanguageServerFixture.getJavaLanguageServer();
+
+    @Test
+    public void recordEvents() throws IOException {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        FlightRecorder.start();
+        // Parser caches the last file, so parse two to be sure one of them is parsed again
+        Parser.parseFile(FindResource.path("/org/javacs/example/GotoOther.java"));
+        Parser.parseFile(file);
+        FileStore.contents(file);
+        var message = new Message();
+        message.method = "java/metrics";
+        message.id = 1;
+        LSP.replay(server, OutputStream.nullOutputStream(), message);
+        var recording = FlightRecorder.stop();
+
+        var names = new HashSet<String>();
+        for (var event : RecordingFile.readAllEvents(recording)) {
+            var name = event.getEventType().getName();
+            names.add(name);
+            if (name.equals("org.javacs.Parse")) {
+                assertThat(event.getString("file"), endsWith(".java"));
+                assertThat(event.getLong("chars"), greaterThan(0L));
+            }
+        }
+        assertThat(names, hasItems("org.javacs.Parse", "org.javacs.ReadFile", "org.javacs.Request"));
+        Files.delete(recording);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stopWithoutStart() {
+        FlightRecorder.stop();
+    }
+}
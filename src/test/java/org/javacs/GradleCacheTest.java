@@ -0,0 +1,69 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GradleCacheTest {
+    private Path gradleHome;
+
+    @Before
+    public void createGradleHome() throws IOException {
+        gradleHome = Files.createTempDirectory("gradle-home");
+    }
+
+    private Path download(String artifactId, String version, String hash, String fileName) throws IOException {
+        var dir = gradleHome.resolve("caches/modules-2/files-2.1/com.example").resolve(artifactId);
+        var jar = dir.resolve(version).resolve(hash).resolve(fileName);
+        Files.createDirectories(jar.getParent());
+        Files.writeString(jar, "");
+        return jar;
+    }
+
+    private Optional<Path> find(String artifactId, String version, String fileName) {
+        return GradleCache.find(gradleHome, new Artifact("com.example", artifactId, version), fileName);
+    }
+
+    @Test
+    public void findIndexedJars() throws IOException {
+        var jar = download("lib", "1.0", "aaa", "lib-1.0.jar");
+        var sources = download("lib", "1.0", "bbb", "lib-1.0-sources.jar");
+        assertThat(find("lib", "1.0", "lib-1.0.jar"), equalTo(Optional.of(jar)));
+        assertThat(find("lib", "1.0", "lib-1.0-sources.jar"), equalTo(Optional.of(sources)));
+        assertThat(find("lib", "2.0", "lib-2.0.jar"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void findJarsDownloadedAfterIndexing() throws IOException {
+        download("lib", "1.0", "aaa", "lib-1.0.jar");
+        find("lib", "1.0", "lib-1.0.jar");
+        var newVersion = download("lib", "2.0", "ccc", "lib-2.0.jar");
+        var newSources = download("lib", "1.0", "ddd", "lib-1.0-sources.jar");
+        assertThat(find("lib", "2.0", "lib-2.0.jar"), equalTo(Optional.of(newVersion)));
+        assertThat(find("lib", "1.0", "lib-1.0-sources.jar"), equalTo(Optional.of(newSources)));
+    }
+
+    @Test
+    public void forgetDeletedJars() throws IOException {
+        var jar = download("lib", "1.0", "aaa", "lib-1.0.jar");
+        assertThat(find("lib", "1.0", "lib-1.0.jar"), equalTo(Optional.of(jar)));
+        Files.delete(jar);
+        var redownloaded = download("lib", "1.0", "eee", "lib-1.0.jar");
+        assertThat(find("lib", "1.0", "lib-1.0.jar"), equalTo(Optional.of(redownloaded)));
+    }
+
+    @Test
+    public void saveIndex() throws IOException {
+        var jar = download("lib", "1.0", "aaa", "lib-1.0.jar");
+        find("lib", "1.0", "lib-1.0.jar");
+        GradleCache.save();
+        var saved = Files.readString(DiskCache.directory().resolve("gradle-index.json"));
+        assertThat(saved, containsString(jar.getFileName().toString()));
+    }
+}
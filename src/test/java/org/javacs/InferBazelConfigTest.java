@@ -3,7 +3,13 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import org.junit.Test;
 
 public class InferBazelConfigTest {
@@ -43,4 +49,46 @@ public class InferBazelConfigTest {
         var bazel = new InferConfig(Paths.get("src/test/examples/bazel-protos-project"));
         assertThat(bazel.buildDocPath(), hasItem(hasToString(endsWith("person_proto-speed-src.jar"))));
     }
+
+    @Test
+    public void fingerprintChangesWithBuildFiles() throws IOException {
+        var root = Files.createTempDirectory("bazel-fingerprint");
+        Files.writeString(root.resolve("WORKSPACE"), "");
+        Files.createDirectories(root.resolve("hello"));
+        Files.writeString(root.resolve("hello/BUILD"), "java_library(name = 'hello')");
+        var bazel = new InferConfig(root);
+        var before = bazel.bazelFingerprint(root);
+        assertThat(bazel.bazelFingerprint(root), equalTo(before));
+
+        // Java sources don't count
+        Files.writeString(root.resolve("hello/Hello.java"), "class Hello {}");
+        assertThat(bazel.bazelFingerprint(root), equalTo(before));
+
+        Files.writeString(root.resolve("hello/BUILD"), "java_library(name = 'hello', srcs = ['Hello.java'])");
+        assertThat(bazel.bazelFingerprint(root), not(equalTo(before)));
+    }
+
+    @Test
+    public void reinferWhenCachedPathIsGone() throws IOException {
+        var root = Files.createTempDirectory("bazel-cache");
+        Files.writeString(root.resolve("WORKSPACE"), "");
+        var jar = root.resolve("bazel-out/lib.jar");
+        Files.createDirectories(jar.getParent());
+        Files.writeString(jar, "");
+        var bazel = new InferConfig(root);
+        var runs = new AtomicInteger();
+        Supplier<Set<Path>> infer =
+                () -> {
+                    runs.incrementAndGet();
+                    return Set.of(jar);
+                };
+        assertThat(bazel.cachedBazelPaths(root, "classPath", infer), contains(jar));
+        assertThat(bazel.cachedBazelPaths(root, "classPath", infer), contains(jar));
+        assertThat(runs.get(), equalTo(1));
+
+        // Like bazel clean
+        Files.delete(jar);
+        bazel.cachedBazelPaths(root, "classPath", infer);
+        assertThat(runs.get(), equalTo(2));
+    }
 }
@@ -3,6 +3,8 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Set;
@@ -94,4 +96,57 @@ public class InferConfigTest {
             assertThat(path, equalTo(Paths.get(expect)));
         }
     }
+
+    @Test
+    public void fingerprintChangesWithPom() throws IOException {
+        var root = Files.createTempDirectory("fingerprint");
+        Files.writeString(root.resolve("pom.xml"), "<project></project>");
+        Files.createDirectories(root.resolve("module/target"));
+        Files.writeString(root.resolve("module/pom.xml"), "<project></project>");
+        var infer = new InferConfig(root, Set.of(), mavenHome, gradleHome);
+        var before = infer.mavenFingerprint();
+        assertThat(infer.mavenFingerprint(), equalTo(before));
+
+        // Build output doesn't count
+        Files.writeString(root.resolve("module/target/pom.xml"), "<project></project>");
+        assertThat(infer.mavenFingerprint(), equalTo(before));
+
+        Files.writeString(root.resolve("module/pom.xml"), "<project><version>2</version></project>");
+        assertThat(infer.mavenFingerprint(), not(equalTo(before)));
+    }
+
+    @Test
+    public void missingSources() throws IOException {
+        var root = Files.createTempDirectory("missing-sources");
+        var home = Files.createTempDirectory("m2");
+        var dependency =
+                "<dependency><groupId>test</groupId><artifactId>a</artifactId><version>1</version></dependency>";
+        Files.writeString(
+                root.resolve("pom.xml"),
+                "<project><groupId>test</groupId><artifactId>root</artifactId><version>1</version>"
+                        + "<dependencies>"
+                        + dependency
+                        + "</dependencies></project>");
+        var dir = home.resolve("repository/test/a/1");
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve("a-1.jar"), "");
+        var infer = new InferConfig(root, Set.of(), home, gradleHome);
+        assertThat(infer.buildDocPath(), empty());
+        assertTrue(infer.isMissingSources());
+
+        Files.writeString(dir.resolve("a-1-sources.jar"), "");
+        var again = new InferConfig(root, Set.of(), home, gradleHome);
+        assertThat(again.buildDocPath(), contains(dir.resolve("a-1-sources.jar")));
+        assertFalse(again.isMissingSources());
+    }
+
+    @Test
+    public void cacheMavenConfig() {
+        var config = thisProject.inferMavenConfig();
+        var cached = thisProject.cachedMavenConfig();
+        assertTrue(cached.isPresent());
+        assertThat(cached.get().fingerprint, equalTo(thisProject.mavenFingerprint()));
+        assertThat(cached.get().classPath(), equalTo(config.classPath()));
+        assertThat(cached.get().classPath(), not(empty()));
+    }
 }
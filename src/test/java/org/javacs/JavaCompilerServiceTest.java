@@ -3,8 +3,12 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.*;
+import org.javacs.hover.HoverProvider;
 import org.junit.*;
 
 public class JavaCompilerServiceTest {
@@ -23,4 +27,72 @@ public class JavaCompilerServiceTest {
     public void setWorkspaceRoot() {
         FileStore.setWorkspaceRoots(Set.of(simpleProjectSrc()));
     }
+
+    private static final Path LIBRARY =
+            Paths.get("src/test/examples/home-dir/.m2/repository/com/external/external-library/1.2")
+                    .resolve("external-library-1.2.jar");
+    private static final Path LIBRARY_SOURCES = LIBRARY.resolveSibling("external-library-1.2-sources.jar");
+
+    @Test
+    public void recompileSourcesWithSameModifiedTime() {
+        var file = simpleProjectSrc().resolve("PruneMethods.java");
+        var modified = Instant.now();
+        var a = new SourceFileObject(file, "class PruneMethods { void a() { int a = 1; } }", modified);
+        try (var task = compiler.compile(List.of(a))) {
+            assertThat(task.root().toString(), containsString("int a = 1"));
+        }
+        var b = new SourceFileObject(file, "class PruneMethods { void b() { int b = 2; } }", modified);
+        try (var task = compiler.compile(List.of(b))) {
+            assertThat(task.root().toString(), containsString("int b = 2"));
+        }
+    }
+
+    @Test
+    public void hoverAfterMovingToAnotherMethod() {
+        var file = simpleProjectSrc().resolve("HoverMethods.java");
+        var hover = new HoverProvider(compiler);
+        // Move back and forth quickly, so some of the pruned sources are created in the same millisecond
+        for (var i = 0; i < 10; i++) {
+            assertThat(hover.hover(file, 4, 21).get(0).value, equalTo("int a"));
+            assertThat(hover.hover(file, 9, 24).get(0).value, equalTo("String b"));
+        }
+    }
+
+    @Test
+    public void reconfigureUnchanged() {
+        var same = compiler.reconfigure(Set.of(), Set.of(), Set.of());
+        assertThat(same, sameInstance(compiler));
+    }
+
+    @Test
+    public void reconfigureDocPath() {
+        var next = compiler.reconfigure(Set.of(), Set.of(LIBRARY_SOURCES), Set.of());
+        assertThat(next, not(sameInstance(compiler)));
+        assertThat(next.classPathClasses, sameInstance(compiler.classPathClasses));
+        assertThat(next.docs, not(sameInstance(compiler.docs)));
+    }
+
+    @Test
+    public void reconfigureJarRebuiltInPlace() throws IOException {
+        var jar = Files.createTempFile("rebuilt", ".jar");
+        Files.copy(LIBRARY, jar, StandardCopyOption.REPLACE_EXISTING);
+        var before = compiler.reconfigure(Set.of(jar), Set.of(), Set.of());
+        assertThat(before.reconfigure(Set.of(jar), Set.of(), Set.of()), sameInstance(before));
+        assertThat(before.publicTopLevelTypes("External", 10), hasItem("com.external.External"));
+        // Same path, different contents
+        Files.writeString(jar, "");
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(LIBRARY).toMillis() + 1000));
+        var after = before.reconfigure(Set.of(jar), Set.of(), Set.of());
+        assertThat(after, not(sameInstance(before)));
+        assertThat(after.classPathClasses, not(sameInstance(before.classPathClasses)));
+        assertThat(after.publicTopLevelTypes("External", 10), not(hasItem("com.external.External")));
+    }
+
+    @Test
+    public void reconfigureClassPath() {
+        var next = compiler.reconfigure(Set.of(LIBRARY), Set.of(), Set.of());
+        assertThat(next.docs, sameInstance(compiler.docs));
+        assertThat(next.publicTopLevelTypes("External", 10), hasItem("com.external.External"));
+        assertThat(compiler.publicTopLevelTypes("External", 10), not(hasItem("com.external.External")));
+    }
 }
@@ -29,27 +29,36 @@ public class LanguageServerFixture {
     }
 
     static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, Consumer<Diagnostic> onError) {
-        return getJavaLanguageServer(
-                workspaceRoot,
-                new LanguageClient() {
-                    @Override
-                    public void publishDiagnostics(PublishDiagnosticsParams params) {
-                        params.diagnostics.forEach(onError);
-                    }
+        return getJavaLanguageServer(workspaceRoot, client(onError));
+    }
+
+    static LanguageClient client(Consumer<Diagnostic> onError) {
+        return new LanguageClient() {
+            @Override
+            public void publishDiagnostics(PublishDiagnosticsParams params) {
+                params.diagnostics.forEach(onError);
+            }
 
-                    @Override
-                    public void showMessage(ShowMessageParams params) {}
+            @Override
+            public void showMessage(ShowMessageParams params) {}
 
-                    @Override
-                    public void registerCapability(String method, JsonElement options) {}
+            @Override
+            public void registerCapability(String method, JsonElement options) {}
 
-                    @Override
-                    public void customNotification(String method, JsonElement params) {}
-                });
+            @Override
+            public void customNotification(String method, JsonElement params) {}
+        };
     }
 
     static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, LanguageClient client) {
-        var server = new JavaLanguageServer(client);
+        return initialize(new JavaLanguageServer(client), workspaceRoot);
+    }
+
+    static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, LanguageClient client, int batchSize) {
+        return initialize(new JavaLanguageServer(client, batchSize), workspaceRoot);
+    }
+
+    private static JavaLanguageServer initialize(JavaLanguageServer server, Path workspaceRoot) {
         var init = new InitializeParams();
 
         init.rootUri = workspaceRoot.toUri();
@@ -0,0 +1,230 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PomResolverTest {
+    private Path repository, workspace;
+
+    @Before
+    public void createDirectories() throws IOException {
+        repository = Files.createTempDirectory("repository");
+        workspace = Files.createTempDirectory("workspace");
+    }
+
+    /** Put a POM with `body` and an empty jar in the temporary local repository */
+    private Path install(String groupId, String artifactId, String version, String body) throws IOException {
+        var dir = repository.resolve(groupId.replace('.', '/')).resolve(artifactId).resolve(version);
+        Files.createDirectories(dir);
+        var pom = coordinates(groupId, artifactId, version) + body;
+        Files.writeString(dir.resolve(artifactId + "-" + version + ".pom"), project(pom));
+        var jar = dir.resolve(artifactId + "-" + version + ".jar");
+        Files.writeString(jar, "");
+        return jar;
+    }
+
+    private Path workspacePom(String body) throws IOException {
+        var pom = workspace.resolve("pom.xml");
+        Files.writeString(pom, project(coordinates("test", "root", "1") + body));
+        return pom;
+    }
+
+    private static String project(String body) {
+        return "<project><modelVersion>4.0.0</modelVersion>" + body + "</project>";
+    }
+
+    private static String coordinates(String groupId, String artifactId, String version) {
+        return "<groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId><version>" + version
+                + "</version>";
+    }
+
+    private static String dependency(String artifactId, String version, String extra) {
+        var v = version == null ? "" : "<version>" + version + "</version>";
+        return "<dependency><groupId>test</groupId><artifactId>" + artifactId + "</artifactId>" + v + extra
+                + "</dependency>";
+    }
+
+    private static String dependencies(String... dependencies) {
+        return "<dependencies>" + String.join("", dependencies) + "</dependencies>";
+    }
+
+    private Set<Path> classPath(Path pom) {
+        return new PomResolver(repository).resolve(pom).orElseThrow().classPath;
+    }
+
+    @Test
+    public void transitiveDependencies() throws IOException {
+        var a = install("test", "a", "1", dependencies(dependency("b", "1", "")));
+        var b = install("test", "b", "1", dependencies(dependency("c", "1", "")));
+        var c = install("test", "c", "1", "");
+        var pom = workspacePom(dependencies(dependency("a", "1", "")));
+        assertThat(classPath(pom), containsInAnyOrder(a, b, c));
+    }
+
+    @Test
+    public void skipOptionalTestAndExcluded() throws IOException {
+        var a =
+                install(
+                        "test",
+                        "a",
+                        "1",
+                        dependencies(
+                                dependency("b", "1", "<optional>true</optional>"),
+                                dependency("c", "1", "<scope>test</scope>"),
+                                dependency("d", "1", "")));
+        install("test", "b", "1", "");
+        install("test", "c", "1", "");
+        install("test", "d", "1", "");
+        var exclusion =
+                "<exclusions><exclusion><groupId>*</groupId><artifactId>d</artifactId></exclusion></exclusions>";
+        var pom = workspacePom(dependencies(dependency("a", "1", exclusion)));
+        assertThat(classPath(pom), contains(a));
+    }
+
+    @Test
+    public void nearestVersionWins() throws IOException {
+        var a = install("test", "a", "1", dependencies(dependency("b", "2", "")));
+        install("test", "b", "2", "");
+        var b1 = install("test", "b", "1", "");
+        var pom = workspacePom(dependencies(dependency("a", "1", ""), dependency("b", "1", "")));
+        assertThat(classPath(pom), containsInAnyOrder(a, b1));
+    }
+
+    @Test
+    public void parentPropertiesAndManagement() throws IOException {
+        var a = install("test", "a", "1", dependencies(dependency("b", "1", "")));
+        install("test", "b", "1", "");
+        var b2 = install("test", "b", "2", "");
+        var managed = dependencies(dependency("a", "${a.version}", ""), dependency("b", "2", ""));
+        var parentBody =
+                coordinates("test", "parent", "1")
+                        + "<packaging>pom</packaging>"
+                        + "<properties><a.version>1</a.version></properties>"
+                        + "<dependencyManagement>"
+                        + managed
+                        + "</dependencyManagement>";
+        Files.writeString(workspace.resolve("pom.xml"), project(parentBody));
+        var child = workspace.resolve("child/pom.xml");
+        Files.createDirectories(child.getParent());
+        var parent = "<parent><groupId>test</groupId><artifactId>parent</artifactId><version>1</version></parent>";
+        var childBody = parent + "<artifactId>child</artifactId>" + dependencies(dependency("a", null, ""));
+        Files.writeString(child, project(childBody));
+        // The parent's dependencyManagement overrides the version of b that a asks for
+        assertThat(classPath(child), containsInAnyOrder(a, b2));
+    }
+
+    @Test
+    public void importBom() throws IOException {
+        var managed = "<dependencyManagement>" + dependencies(dependency("a", "2", "")) + "</dependencyManagement>";
+        install("test", "bom", "1", managed);
+        var a = install("test", "a", "2", "");
+        var bom = dependency("bom", "1", "<type>pom</type><scope>import</scope>");
+        var pom =
+                workspacePom(
+                        "<dependencyManagement>"
+                                + dependencies(bom)
+                                + "</dependencyManagement>"
+                                + dependencies(dependency("a", null, "")));
+        assertThat(classPath(pom), contains(a));
+    }
+
+    @Test
+    public void modulesDependOnEachOther() throws IOException {
+        var a = install("test", "a", "1", "");
+        var modules = "<packaging>pom</packaging><modules><module>one</module><module>two</module></modules>";
+        var root = workspacePom(modules);
+        var parent = "<parent><groupId>test</groupId><artifactId>root</artifactId><version>1</version></parent>";
+        Files.createDirectories(workspace.resolve("one"));
+        Files.writeString(
+                workspace.resolve("one/pom.xml"),
+                project(parent + "<artifactId>one</artifactId>" + dependencies(dependency("a", "1", ""))));
+        Files.createDirectories(workspace.resolve("two"));
+        Files.writeString(
+                workspace.resolve("two/pom.xml"),
+                project(parent + "<artifactId>two</artifactId>" + dependencies(dependency("one", "1", ""))));
+        assertThat(classPath(root), contains(a));
+    }
+
+    @Test
+    public void missingJarFallsBackToMaven() throws IOException {
+        var pom = workspacePom(dependencies(dependency("missing", "1", "")));
+        assertThat(new PomResolver(repository).resolve(pom), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void versionRangeFallsBackToMaven() throws IOException {
+        install("test", "a", "1", "");
+        var pom = workspacePom(dependencies(dependency("a", "[1,2)", "")));
+        assertThat(new PomResolver(repository).resolve(pom), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void activeByDefaultProfile() throws IOException {
+        var a = install("test", "a", "1", "");
+        install("test", "b", "1", "");
+        var profiles =
+                "<profiles>"
+                        + "<profile><id>on</id><activation><activeByDefault>true</activeByDefault></activation>"
+                        + dependencies(dependency("a", "1", ""))
+                        + "</profile>"
+                        + "<profile><id>off</id>"
+                        + dependencies(dependency("b", "1", ""))
+                        + "</profile>"
+                        + "</profiles>";
+        var pom = workspacePom(profiles);
+        assertThat(classPath(pom), contains(a));
+    }
+
+    @Test
+    public void conditionalProfileFallsBackToMaven() throws IOException {
+        install("test", "a", "1", "");
+        var profiles =
+                "<profiles><profile><id>jdk</id><activation><jdk>[11,)</jdk></activation>"
+                        + dependencies(dependency("a", "1", ""))
+                        + "</profile></profiles>";
+        var pom = workspacePom(profiles);
+        assertThat(new PomResolver(repository).resolve(pom), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void ignoreConditionalProfileWithoutDependencies() throws IOException {
+        var a = install("test", "a", "1", "");
+        var profiles =
+                "<profiles><profile><id>jdk</id><activation><jdk>[11,)</jdk></activation>"
+                        + "<properties><doclint>none</doclint></properties>"
+                        + "<build><plugins/></build>"
+                        + "</profile></profiles>";
+        var pom = workspacePom(profiles + dependencies(dependency("a", "1", "")));
+        assertThat(classPath(pom), contains(a));
+    }
+
+    @Test
+    public void conditionalPropertyFallsBackToMaven() throws IOException {
+        install("test", "a", "1", "");
+        install("test", "a", "2", "");
+        var profiles =
+                "<properties><a.version>1</a.version></properties>"
+                        + "<profiles><profile><id>jdk</id><activation><jdk>[11,)</jdk></activation>"
+                        + "<properties><a.version>2</a.version></properties>"
+                        + "</profile></profiles>";
+        var pom = workspacePom(profiles + dependencies(dependency("a", "${a.version}", "")));
+        assertThat(new PomResolver(repository).resolve(pom), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void sameAsMaven() {
+        var home = Paths.get(System.getProperty("user.home"));
+        var resolved = new PomResolver(home.resolve(".m2/repository")).resolve(Paths.get("pom.xml"));
+        var maven = InferConfig.mvnDependencies(Paths.get("pom.xml"), "dependency:list");
+        assertThat(resolved.orElseThrow().classPath, equalTo(maven));
+    }
+}
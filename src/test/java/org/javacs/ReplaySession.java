@@ -0,0 +1,84 @@
+package org.javacs;
+
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.javacs.lsp.LSP;
+import org.javacs.lsp.SessionRecorder;
+
+/**
+ * ReplaySession feeds a session recorded with `--record=<file>` into a fresh JavaLanguageServer, one message at a time,
+ * and measures how long each request takes. Messages are replayed as fast as possible, so the result doesn't depend on
+ * how fast the user typed; the recorded times are only used to decide when the client went quiet long enough for the
+ * server to do its background work.
+ *
+ * <p>The recording refers to files by absolute path, so it must be replayed against the same checkout it was recorded
+ * in.
+ */
+public class ReplaySession {
+    /** LSP.connect does background work after the client has been quiet for this long */
+    private static final long IDLE_MILLIS = 200;
+
+    public static class Latency {
+        public final String method;
+        public final int id;
+        public final long nanos;
+
+        Latency(String method, int id, long nanos) {
+            this.method = method;
+            this.id = id;
+            this.nanos = nanos;
+        }
+    }
+
+    public static List<Latency> replay(List<SessionRecorder.Entry> session) {
+        var server = new JavaLanguageServer(LanguageServerFixture.client(__ -> {}));
+        var latencies = new ArrayList<Latency>();
+        for (var i = 0; i < session.size(); i++) {
+            var entry = session.get(i);
+            var message = entry.message;
+            if (message.method.equals("exit")) break;
+            var started = System.nanoTime();
+            LSP.replay(server, OutputStream.nullOutputStream(), message);
+            if (message.id != null) {
+                latencies.add(new Latency(message.method, message.id, System.nanoTime() - started));
+            }
+            var next = i + 1 < session.size() ? session.get(i + 1).time : Long.MAX_VALUE;
+            if (next - entry.time > IDLE_MILLIS) {
+                server.doAsyncWork();
+            }
+        }
+        return latencies;
+    }
+
+    /** Total milliseconds spent in each method */
+    static Map<String, Long> totals(List<Latency> latencies) {
+        var totals = new TreeMap<String, Long>();
+        for (var l : latencies) {
+            totals.merge(l.method, l.nanos / 1_000_000, Long::sum);
+        }
+        return totals;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ReplaySession recording.jsonl");
+            System.exit(1);
+        }
+        Logger.getLogger("main").setLevel(Level.WARNING);
+        var session = SessionRecorder.read(Paths.get(args[0]));
+        var latencies = replay(session);
+        for (var l : latencies) {
+            System.out.printf("%6d %-40s %8d ms%n", l.id, l.method, l.nanos / 1_000_000);
+        }
+        System.out.println();
+        for (var total : totals(latencies).entrySet()) {
+            System.out.printf("%-47s %8d ms%n", total.getKey(), total.getValue());
+        }
+    }
+}
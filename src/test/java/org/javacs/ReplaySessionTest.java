@@ -0,0 +1,43 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import org.javacs.lsp.SessionRecorder;
+import org.junit.Test;
+
+public class ReplaySessionTest {
+    @Test
+    public void replayHover() throws IOException {
+        var root = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.toAbsolutePath().toUri();
+        var file = FindResource.uri("/org/javacs/example/SymbolUnderCursor.java");
+        var recording = Files.createTempFile("session", ".jsonl");
+        Files.writeString(
+                recording,
+                String.join(
+                        "\n",
+                        "{\"time\":0,\"message\":{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\","
+                                + "\"params\":{\"rootUri\":\""
+                                + root
+                                + "\"}}}",
+                        "{\"time\":10,\"message\":{\"jsonrpc\":\"2.0\",\"method\":\"initialized\",\"params\":{}}}",
+                        "{\"time\":20,\"message\":{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"textDocument/hover\","
+                                + "\"params\":{\"textDocument\":{\"uri\":\""
+                                + file
+                                + "\"},\"position\":{\"line\":11,\"character\":22}}}}"));
+        var session = SessionRecorder.read(recording);
+        assertThat(session, hasSize(3));
+
+        var latencies = ReplaySession.replay(session);
+        var methods = new ArrayList<String>();
+        for (var l : latencies) {
+            methods.add(l.method);
+            assertThat(l.nanos, greaterThan(0L));
+        }
+        assertThat(methods, contains("initialize", "textDocument/hover"));
+        Files.delete(recording);
+    }
+}
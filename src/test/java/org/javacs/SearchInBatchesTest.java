@@ -0,0 +1,119 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.javacs.lsp.*;
+import org.junit.Test;
+
+/** Find references and rename compile one file at a time, and give the same answers as in one batch */
+public class SearchInBatchesTest {
+    private final List<JsonElement> partialResults = new ArrayList<>();
+    private final List<String> progress = new ArrayList<>();
+    private final LanguageClient client =
+            new LanguageClient() {
+                @Override
+                public void publishDiagnostics(PublishDiagnosticsParams params) {}
+
+                @Override
+                public void showMessage(ShowMessageParams params) {}
+
+                @Override
+                public void registerCapability(String method, JsonElement options) {}
+
+                @Override
+                public void customNotification(String method, JsonElement params) {
+                    if (method.equals("$/progress")) partialResults.add(params);
+                    if (method.equals("java/reportProgress")) {
+                        // Ignore the progress of configuring the compiler
+                        var message = params.getAsJsonObject().get("message").getAsString();
+                        if (message.endsWith(" files")) progress.add(message);
+                    }
+                }
+            };
+
+    /** Big enough that every file is searched in one batch */
+    private static final int ALL_AT_ONCE = 1000;
+
+    private JavaLanguageServer server(int batchSize) {
+        return LanguageServerFixture.getJavaLanguageServer(
+                LanguageServerFixture.DEFAULT_WORKSPACE_ROOT, client, batchSize);
+    }
+
+    /** GotoOther.methodStatic, which is mentioned in several files */
+    private static final URI FILE = FindResource.uri("/org/javacs/example/GotoOther.java");
+
+    private static final Position METHOD_STATIC = new Position(5, 29);
+
+    private List<Location> findReferences(int batchSize, JsonElement partialResultToken) {
+        var params = new ReferenceParams();
+        params.textDocument = new TextDocumentIdentifier(FILE);
+        params.position = METHOD_STATIC;
+        params.partialResultToken = partialResultToken;
+        return server(batchSize).findReferences(params).get();
+    }
+
+    private Map<URI, List<TextEdit>> rename(int batchSize) {
+        var params = new RenameParams();
+        params.textDocument = new TextDocumentIdentifier(FILE);
+        params.position = METHOD_STATIC;
+        params.newName = "renamed";
+        return server(batchSize).rename(params).changes;
+    }
+
+    private static List<String> strings(List<Location> locations) {
+        var strings = new ArrayList<String>();
+        for (var l : locations) {
+            strings.add(String.format("%s(%d)", StringSearch.fileName(l.uri), l.range.start.line + 1));
+        }
+        return strings;
+    }
+
+    @Test
+    public void findReferencesInBatches() {
+        var together = strings(findReferences(ALL_AT_ONCE, null));
+        assertThat(together, hasSize(greaterThan(1)));
+        assertThat(progress, empty());
+        var batched = strings(findReferences(1, null));
+        assertThat(batched, containsInAnyOrder(together.toArray()));
+        // One progress report per file, ending with all of them
+        assertThat(progress, hasSize(greaterThan(1)));
+        var last = progress.get(progress.size() - 1);
+        var total = last.substring(last.indexOf('/') + 1, last.indexOf(' '));
+        assertThat(last, equalTo(total + "/" + total + " files"));
+    }
+
+    @Test
+    public void streamEachBatch() {
+        var together = strings(findReferences(ALL_AT_ONCE, null));
+        var found = findReferences(1, new JsonPrimitive("partial"));
+        assertThat(found, empty());
+        assertThat(partialResults, hasSize(greaterThan(1)));
+        var streamed = new ArrayList<Location>();
+        for (var partial : partialResults) {
+            assertThat(partial.getAsJsonObject().get("token").getAsString(), equalTo("partial"));
+            var value = partial.getAsJsonObject().get("value");
+            for (var location : JsonHelper.GSON.fromJson(value, Location[].class)) {
+                streamed.add(location);
+            }
+        }
+        assertThat(strings(streamed), containsInAnyOrder(together.toArray()));
+    }
+
+    @Test
+    public void renameInBatches() {
+        var together = rename(ALL_AT_ONCE);
+        assertThat(together.keySet(), hasSize(greaterThan(1)));
+        var batched = rename(1);
+        assertThat(batched.keySet(), equalTo(together.keySet()));
+        for (var file : together.keySet()) {
+            assertThat(batched.get(file), hasSize(together.get(file).size()));
+        }
+    }
+}
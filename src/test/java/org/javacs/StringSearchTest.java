@@ -4,6 +4,9 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
 import org.javacs.lsp.DidOpenTextDocumentParams;
@@ -91,6 +94,27 @@ public class StringSearchTest {
         assertFalse(StringSearch.containsWordMatching(smallFile, "removeMethodBodies"));
     }
 
+    @Test
+    public void searchFromSeveralThreads() throws Exception {
+        var largeFile = Paths.get(FindResource.uri("/org/javacs/example/LargeFile.java"));
+        var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
+        var threads = Executors.newFixedThreadPool(4);
+        try {
+            var results = new ArrayList<Future<Boolean>>();
+            for (var i = 0; i < 200; i++) {
+                // Each search only matches its own file, so a buffer shared between threads gives wrong answers
+                results.add(threads.submit(() -> StringSearch.containsWordMatching(largeFile, "removeMethodBodies")));
+                results.add(threads.submit(() -> !StringSearch.containsWord(smallFile, "removeMethodBodies")));
+                results.add(threads.submit(() -> StringSearch.containsWord(smallFile, "nonDefaultConstructor")));
+            }
+            for (var result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
     @Test
     public void searchOpenFile() {
         // Open file
@@ -0,0 +1,168 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import org.javacs.lsp.Position;
+
+/**
+ * SyntheticWorkspace generates a workspace of compiling Java sources, for measuring how the server scales with the
+ * size of the workspace. The same config always generates the same files.
+ *
+ * <p>Class C{i} lives in package number {i / packageSize}. Packages form a tree with {fanOut} children per package,
+ * rooted at `gen`. Each class has a field for each of {imports} randomly chosen earlier classes and calls `method0` on
+ * them, so earlier classes have more references. Classes form inheritance chains {depth} classes long, and each class
+ * has {methods} methods of {statements} statements.
+ */
+public class SyntheticWorkspace {
+    public static class Config {
+        public int files = 1000, packageSize = 20, fanOut = 4, imports = 5, depth = 3, methods = 5, statements = 5;
+        public long seed = 1;
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d-files-%d-per-package-%d-fan-out-%d-imports-%d-deep-%dx%d-statements-seed-%d",
+                    files, packageSize, fanOut, imports, depth, methods, statements, seed);
+        }
+    }
+
+    public final Config config;
+    public final Path root;
+
+    public SyntheticWorkspace(Config config, Path root) {
+        this.config = config;
+        this.root = root;
+    }
+
+    /** Generate the workspace under target/synthetic, or reuse it if a previous run already generated it */
+    public static SyntheticWorkspace cached(Config config) {
+        var root = Paths.get("target/synthetic", config.toString()).toAbsolutePath();
+        var workspace = new SyntheticWorkspace(config, root);
+        if (!Files.exists(root.resolve(COMPLETE))) {
+            workspace.generate();
+        }
+        return workspace;
+    }
+
+    private static final String COMPLETE = ".complete";
+
+    public void generate() {
+        LOG.info(String.format("Generate %d files in %s...", config.files, root));
+        var random = new Random(config.seed);
+        try {
+            for (var i = 0; i < config.files; i++) {
+                var file = file(i);
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, source(i, random));
+            }
+            Files.writeString(root.resolve(COMPLETE), config.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Path file(int i) {
+        return root.resolve(packageName(i).replace('.', '/')).resolve(className(i) + ".java");
+    }
+
+    /** The position of the first occurrence of `text` in `file` */
+    public static Position find(Path file, String text) {
+        String contents;
+        try {
+            contents = Files.readString(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        var offset = contents.indexOf(text);
+        if (offset == -1) {
+            throw new RuntimeException(text + " is not in " + file);
+        }
+        var line = 0;
+        var startOfLine = 0;
+        for (var i = 0; i < offset; i++) {
+            if (contents.charAt(i) == '\n') {
+                line++;
+                startOfLine = i + 1;
+            }
+        }
+        return new Position(line, offset - startOfLine);
+    }
+
+    private String className(int i) {
+        return "C" + i;
+    }
+
+    private String packageName(int i) {
+        var name = new StringBuilder();
+        for (var p = i / config.packageSize; p > 0; p = (p - 1) / config.fanOut) {
+            name.insert(0, ".p" + (p - 1) % config.fanOut);
+        }
+        return "gen" + name;
+    }
+
+    private String qualifiedName(int i) {
+        return packageName(i) + "." + className(i);
+    }
+
+    private String source(int i, Random random) {
+        var uses = new TreeSet<Integer>();
+        while (uses.size() < Math.min(config.imports, i)) {
+            uses.add(random.nextInt(i));
+        }
+        var parent = config.depth > 1 && i % config.depth != 0 ? i - 1 : -1;
+        var imports = new TreeSet<String>();
+        if (parent != -1) imports.add(qualifiedName(parent));
+        for (var j : uses) imports.add(qualifiedName(j));
+
+        var out = new StringBuilder();
+        out.append("package ").append(packageName(i)).append(";\n\n");
+        for (var name : imports) {
+            out.append("import ").append(name).append(";\n");
+        }
+        if (!imports.isEmpty()) out.append("\n");
+        out.append("/** Synthetic class ").append(i).append(" */\n");
+        out.append("public class ").append(className(i));
+        if (parent != -1) out.append(" extends ").append(className(parent));
+        out.append(" {\n");
+        var field = 0;
+        for (var j : uses) {
+            out.append(String.format("    private final C%d field%d = new C%d();\n", j, field++, j));
+        }
+        if (!uses.isEmpty()) out.append("\n");
+        for (var m = 0; m < config.methods; m++) {
+            out.append(String.format("    public int method%d(int x) {\n", m));
+            out.append("        var total = x;\n");
+            if (m == 0) {
+                for (var f = 0; f < uses.size(); f++) {
+                    out.append(String.format("        total += field%d.method0(total);\n", f));
+                }
+            }
+            for (var s = 0; s < config.statements; s++) {
+                var literal = "s" + random.nextInt(1000);
+                out.append(String.format("        total = total * 31 + \"%s\".length();\n", literal));
+            }
+            out.append("        return total;\n");
+            out.append("    }\n");
+            if (m + 1 < config.methods) out.append("\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticWorkspace dir [files]");
+            System.exit(1);
+        }
+        var config = new Config();
+        if (args.length > 1) config.files = Integer.parseInt(args[1]);
+        new SyntheticWorkspace(config, Paths.get(args[0])).generate();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
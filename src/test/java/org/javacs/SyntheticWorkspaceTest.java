@@ -0,0 +1,67 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.javacs.lsp.*;
+import org.junit.Test;
+
+public class SyntheticWorkspaceTest {
+    private static SyntheticWorkspace generate() throws IOException {
+        var config = new SyntheticWorkspace.Config();
+        config.files = 100;
+        config.packageSize = 10;
+        var workspace = new SyntheticWorkspace(config, Files.createTempDirectory("synthetic"));
+        workspace.generate();
+        return workspace;
+    }
+
+    @Test
+    public void sameConfigSameFiles() throws IOException {
+        var a = generate();
+        var b = generate();
+        for (var i = 0; i < a.config.files; i++) {
+            assertThat(a.root.relativize(a.file(i)), equalTo(b.root.relativize(b.file(i))));
+            assertThat(Files.readString(a.file(i)), equalTo(Files.readString(b.file(i))));
+        }
+        assertThat(a.root.relativize(a.file(99)).toString(), equalTo("gen/p1/p0/C99.java"));
+    }
+
+    @Test
+    public void compilesAndHasReferences() throws IOException {
+        var workspace = generate();
+        var server = LanguageServerFixture.getJavaLanguageServer(workspace.root, diagnostic -> {});
+        try (var task = server.compiler().compile(workspace.file(99))) {
+            for (var d : task.diagnostics) {
+                assertThat(d.getMessage(null), d.getKind(), not(equalTo(Diagnostic.Kind.ERROR)));
+            }
+        }
+
+        var first = workspace.file(0);
+        var params = new ReferenceParams();
+        params.textDocument = new TextDocumentIdentifier(first.toUri());
+        params.position = SyntheticWorkspace.find(first, "method0");
+        var references = server.findReferences(params).orElse(List.of());
+        assertThat(references, not(empty()));
+    }
+
+    @Test
+    public void completesMembers() throws IOException {
+        var workspace = generate();
+        var server = LanguageServerFixture.getJavaLanguageServer(workspace.root, diagnostic -> {});
+        var last = workspace.file(99);
+        var position = SyntheticWorkspace.find(last, "field0.method0");
+        position.character += "field0.meth".length();
+        var params = new TextDocumentPositionParams(new TextDocumentIdentifier(last.toUri()), position);
+        var labels = new ArrayList<String>();
+        for (var item : server.completion(params).orElseThrow().items) {
+            labels.add(item.label);
+        }
+        assertThat(labels, hasItem("method0"));
+    }
+}
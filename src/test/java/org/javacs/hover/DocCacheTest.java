@@ -0,0 +1,47 @@
+package org.javacs.hover;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import org.javacs.SourceFileObject;
+import org.junit.Test;
+
+public class DocCacheTest {
+    private static final String[] NO_PARAMETERS = {};
+
+    private static SourceFileObject source(String name, long modified) {
+        var path = Paths.get("/workspace/src").resolve(name + ".java");
+        return new SourceFileObject(path, "class " + name + " {}", Instant.ofEpochMilli(modified));
+    }
+
+    private static DocCache.Key key(String className, long modified) {
+        return new DocCache.Key(className, "method", NO_PARAMETERS, source(className, modified));
+    }
+
+    @Test
+    public void expireWhenFileChanges() {
+        DocCache.put(key("Changed", 1), new DocCache.Value("method()", "Old docs"));
+        assertThat(DocCache.get(key("Changed", 1)).markdown, equalTo("Old docs"));
+        // Editing the file gives it a new modified time, so the old docs are never served
+        assertThat(DocCache.get(key("Changed", 2)), nullValue());
+        DocCache.put(key("Changed", 2), new DocCache.Value("method()", "New docs"));
+        assertThat(DocCache.get(key("Changed", 2)).markdown, equalTo("New docs"));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        DocCache.put(key("First", 1), new DocCache.Value(null, "first"));
+        DocCache.put(key("Second", 1), new DocCache.Value(null, "second"));
+        for (var i = 0; i < DocCache.MAX_ENTRIES; i++) {
+            // Keep using First, so Second is evicted before it
+            DocCache.get(key("First", 1));
+            DocCache.put(key("Filler" + i, 1), new DocCache.Value(null, ""));
+        }
+        assertThat(DocCache.size(), equalTo(DocCache.MAX_ENTRIES));
+        assertThat(DocCache.get(key("First", 1)), notNullValue());
+        assertThat(DocCache.get(key("Second", 1)), nullValue());
+        assertThat(DocCache.get(key("Filler" + (DocCache.MAX_ENTRIES - 1), 1)), notNullValue());
+    }
+}
@@ -3,9 +3,11 @@ package org.javacs.lsp;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -21,7 +23,10 @@ public class LanguageServerTest {
     PipedOutputStream writeClientToServer, writeServerToClient;
     LanguageServer mockServer;
     Thread main;
-    CompletableFuture<Void> receivedInitialize = new CompletableFuture<>();
+    CompletableFuture<Void> receivedInitialize = new CompletableFuture<>(),
+            releaseSave = new CompletableFuture<>(),
+            startedHover = new CompletableFuture<>();
+    CompletableFuture<DidChangeTextDocumentParams> receivedChanges = new CompletableFuture<>();
 
     class TestLanguageServer extends LanguageServer {
         @Override
@@ -29,6 +34,37 @@ public class LanguageServerTest {
             receivedInitialize.complete(null);
             return new InitializeResult();
         }
+
+        @Override
+        public Optional<Hover> hover(TextDocumentPositionParams position) {
+            // Pretend to be slow, until the request is cancelled
+            startedHover.complete(null);
+            var token = CancelToken.current();
+            for (var i = 0; i < 1000 && !token.isCancelled(); i++) {
+                sleep(10);
+            }
+            token.checkCancelled();
+            return Optional.empty();
+        }
+
+        @Override
+        public void didChangeTextDocument(DidChangeTextDocumentParams params) {
+            receivedChanges.complete(params);
+        }
+
+        @Override
+        public void didSaveTextDocument(DidSaveTextDocumentParams params) {
+            // Keep the main thread busy, so messages pile up in the queue
+            releaseSave.join();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     static {
@@ -67,6 +103,25 @@ public class LanguageServerTest {
     }
 
     String initializeMessage = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}";
+    String hoverMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"textDocument/hover\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":0,\"character\":0}}}";
+    String changeMessage =
+            "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\",\"version\":2},\"contentChanges\":[]}}";
+    String saveMessage =
+            "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didSave\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\"}}}";
+
+    String changeMessage(int version, String text) {
+        return "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":"
+                + "{\"textDocument\":{\"uri\":\"file:///Foo.java\",\"version\":"
+                + version
+                + "},\"contentChanges\":[{\"text\":\""
+                + text
+                + "\"}]}}";
+    }
+
     String exitMessage = "{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}";
 
     @Test
@@ -94,4 +149,52 @@ public class LanguageServerTest {
         main.join(10_000);
         assertThat("Main thread has quit", main.isAlive(), equalTo(false));
     }
+
+    @Test
+    public void editCancelsRunningRequest() throws Exception {
+        sendToServer(hoverMessage);
+        startedHover.get(10, TimeUnit.SECONDS);
+        sendToServer(changeMessage);
+        var response = new BufferedReader(new MessageInput(serverToClient).next()).readLine();
+        assertThat(response, containsString("\"id\":2"));
+        assertThat(response, containsString(Integer.toString(ErrorCodes.RequestCancelled)));
+    }
+
+    @Test
+    public void metricsDontWaitForRunningRequest() throws Exception {
+        sendToServer(hoverMessage);
+        startedHover.get(10, TimeUnit.SECONDS);
+        sendToServer("{\"jsonrpc\":\"2.0\",\"method\":\"$/setTrace\",\"params\":{\"value\":\"off\"}}");
+        sendToServer("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"java/metrics\"}");
+        // The hover is still running, so the first response is the metrics
+        var input = new MessageInput(serverToClient);
+        var response = new BufferedReader(input.next()).readLine();
+        assertThat(response, containsString("\"id\":3"));
+        sendToServer("{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":2}}");
+        response = new BufferedReader(input.next()).readLine();
+        assertThat(response, containsString("\"id\":2"));
+        assertThat(response, containsString(Integer.toString(ErrorCodes.RequestCancelled)));
+    }
+
+    @Test
+    public void coalesceChangesAndDropStaleRequests() throws Exception {
+        sendToServer(saveMessage);
+        sendToServer(hoverMessage);
+        sendToServer(changeMessage(2, "a"));
+        sendToServer(changeMessage(3, "ab"));
+        sendToServer(hoverMessage.replace("\"id\":2", "\"id\":3"));
+        sendToServer(changeMessage(4, "abc"));
+        // Both hovers were about versions that have since changed, so they're answered without running
+        var input = new MessageInput(serverToClient);
+        for (var id = 2; id <= 3; id++) {
+            var response = new BufferedReader(input.next()).readLine();
+            assertThat(response, containsString("\"id\":" + id));
+            assertThat(response, containsString(Integer.toString(ErrorCodes.ContentModified)));
+        }
+        // Once the main thread is free, the edits arrive as one notification
+        releaseSave.complete(null);
+        var changes = receivedChanges.get(10, TimeUnit.SECONDS);
+        assertThat(changes.textDocument.version, equalTo(4));
+        assertThat(changes.contentChanges, hasSize(3));
+    }
 }
@@ -5,10 +5,14 @@ import static org.junit.Assert.*;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.StringReader;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 import org.junit.After;
 import org.junit.Before;
@@ -79,6 +83,17 @@ public class LspTest {
         assertThat(bufferToString(), equalTo(expected));
     }
 
+    @Test
+    public void writeLargeThenSmallResponse() {
+        var large = "x".repeat(100_000);
+        LSP.respond(writer, 1, large);
+        LSP.respond(writer, 2, 2);
+        var expected =
+                String.format("Content-Length: %d\r\n\r\n{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"%s\"}", 100_036, large)
+                        + "Content-Length: 35\r\n\r\n{\"jsonrpc\":\"2.0\",\"id\":2,\"result\":2}";
+        assertThat(bufferToString(), equalTo(expected));
+    }
+
     @Test
     public void readMessage() throws IOException {
         var message = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}";
@@ -86,10 +101,7 @@ public class LspTest {
         writer.write(header.getBytes());
         writer.write(message.getBytes());
 
-        var token = LSP.nextToken(buffer);
-        assertThat(token, equalTo(message));
-
-        var parse = LSP.parseMessage(token);
+        var parse = LSP.parseMessage(new MessageInput(buffer).next());
         assertThat(parse.jsonrpc, equalTo("2.0"));
         assertThat(parse.id, equalTo(1));
         assertThat(parse.method, equalTo("initialize"));
@@ -107,16 +119,31 @@ public class LspTest {
         writer.write(header.getBytes());
         writer.write(message.getBytes());
 
-        var token = LSP.nextToken(buffer);
-        assertThat(token, equalTo(message));
-
-        var parse = LSP.parseMessage(token);
+        var parse = LSP.parseMessage(new MessageInput(buffer).next());
         assertThat(parse.jsonrpc, equalTo("2.0"));
         assertThat(parse.id, equalTo(1));
         assertThat(parse.method, equalTo("initialize"));
         assertThat(parse.params, equalTo(gson.toJsonTree(params)));
     }
 
+    @Test
+    public void readConsecutiveMessages() throws IOException {
+        var first = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}";
+        var second = "{\"jsonrpc\":\"2.0\",\"method\":\"initialized\",\"params\":{}}";
+        var stream =
+                String.format("Content-Length: %d\r\n\r\n%s", first.length(), first)
+                        + String.format(
+                                "content-length: %d\r\nContent-Type: application/vscode-jsonrpc\r\n\r\n%s",
+                                second.length(), second);
+        writer.write(stream.getBytes());
+        writer.close();
+
+        var input = new MessageInput(buffer);
+        assertThat(LSP.parseMessage(input.next()).method, equalTo("initialize"));
+        assertThat(LSP.parseMessage(input.next()).method, equalTo("initialized"));
+        assertThat(input.next(), nullValue());
+    }
+
     @Test
     public void excludeDefaults() {
         var item = new CompletionItem();
@@ -124,4 +151,37 @@ public class LspTest {
 
         assertThat(text, equalTo("{\"kind\":0}"));
     }
+
+    @Test
+    public void adaptersMatchReflection() {
+        var item = new CompletionItem();
+        item.label = "foo";
+        item.kind = CompletionItemKind.Method;
+        item.detail = "void foo()";
+        item.sortText = "1";
+        item.insertTextFormat = InsertTextFormat.Snippet;
+        var range = new Range(new Position(1, 2), new Position(3, 4));
+        item.additionalTextEdits = List.of(new TextEdit(range, "import foo;"));
+        item.commitCharacters = List.of('(');
+        item.data = new JsonPrimitive("data");
+        var diagnostic = new Diagnostic();
+        diagnostic.range = range;
+        diagnostic.severity = DiagnosticSeverity.Error;
+        diagnostic.message = "error";
+        var location = new Location(URI.create("file:///Foo.java"), range);
+
+        for (var value : List.of(item, diagnostic, location)) {
+            var expected = gson.toJson(value);
+            assertThat(LSP.toJson(value), equalTo(expected));
+            assertThat(LSP.toJson(gson.fromJson(expected, value.getClass())), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void skipIgnoredParams() {
+        var message = "{\"jsonrpc\":\"2.0\",\"method\":\"$/setTrace\",\"params\":{\"value\":\"off\"}}";
+        var parse = LSP.parseMessage(new StringReader(message));
+        assertThat(parse.method, equalTo("$/setTrace"));
+        assertThat(parse.params, nullValue());
+    }
 }
@@ -0,0 +1,41 @@
+package org.javacs.lsp;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MetricsTest {
+    @Test
+    public void percentiles() {
+        var histogram = new Metrics.Histogram();
+        for (var i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertThat((double) histogram.percentile(0.50), closeTo(500, 100));
+        assertThat((double) histogram.percentile(0.99), closeTo(990, 200));
+        assertThat(histogram.percentile(1.0), equalTo(1000L));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        assertThat(new Metrics.Histogram().percentile(0.5), equalTo(0L));
+    }
+
+    @Test
+    public void recordByMethod() {
+        var metrics = new Metrics();
+        metrics.record("textDocument/hover", 1_000_000, 20_000_000, 100, false);
+        metrics.record("textDocument/hover", 1_000_000, 20_000_000, 100, true);
+        metrics.record("textDocument/didChange", 1_000_000, 2_000_000, -1, false);
+
+        var snapshot = metrics.snapshot();
+        assertThat(snapshot.keySet(), contains("textDocument/didChange", "textDocument/hover"));
+        var hover = snapshot.get("textDocument/hover");
+        assertThat(hover.count, equalTo(2L));
+        assertThat(hover.errors, equalTo(1L));
+        assertThat(hover.handleMillis.p50, closeTo(20, 4));
+        assertThat(hover.responseBytes.max, equalTo(100.0));
+        assertThat(snapshot.get("textDocument/didChange").responseBytes.max, equalTo(0.0));
+    }
+}
@@ -30,7 +30,7 @@ public class RewriteTest {
     public void renameField() {
         var className = "org.javacs.rewrite.TestRenameField";
         var fieldName = "foo";
-        var renamer = new RenameField(className, fieldName, "bar");
+        var renamer = new RenameField(className, fieldName, "bar", 1);
         var edits = renamer.rewrite(compiler);
         assertThat(edits.keySet(), hasSize(1));
         assertThat(edits, hasKey(file("TestRenameField.java")));
@@ -41,7 +41,7 @@ public class RewriteTest {
         var className = "org.javacs.rewrite.TestRenameMethod";
         var methodName = "foo";
         String[] erasedParameterTypes = {};
-        var renamer = new RenameMethod(className, methodName, erasedParameterTypes, "bar");
+        var renamer = new RenameMethod(className, methodName, erasedParameterTypes, "bar", 1);
         var edits = renamer.rewrite(compiler);
         assertThat(edits.keySet(), hasSize(1));
         assertThat(edits, hasKey(file("TestRenameMethod.java")));